@@ -0,0 +1,64 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+/**
+ * Helper class for block objects.
+ */
+public class Block implements Comparable<Block> {
+    private int start;
+    private int end;
+    private final BlockType type;
+
+    Block(final BlockType type, final int start, final int end) {
+        this.type = type;
+        this.start = start;
+        this.end = end;
+    }
+
+    public final int getStart() {
+        return start;
+    }
+
+    public final int getEnd() {
+        return end;
+    }
+
+    /**
+     * Move block to other coordinates of the same text.
+     * @param newStart new start
+     * @param newEnd new end
+     */
+    void relocate(final int newStart, final int newEnd) {
+        start = newStart;
+        end = newEnd;
+    }
+
+    public final BlockType getType() {
+        return type;
+    }
+
+    @Override
+    public final int compareTo(final Block that) {
+        return Integer.compare(this.start, that.start);
+    }
+}
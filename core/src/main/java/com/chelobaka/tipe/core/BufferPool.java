@@ -0,0 +1,174 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+
+/**
+ * Small pool of scratch buffers reused from one document to the next:
+ * read buffers, string builders and block lists. Buffers grown above
+ * {@code tipe.buffer.cap} chars or elements are not taken back, so the
+ * largest document processed is not kept on the heap. Buffers must not
+ * be used after they are returned.
+ */
+public final class BufferPool {
+
+    /** Largest buffer size in chars or list elements kept by the pool. */
+    static final int CAP = Integer.getInteger("tipe.buffer.cap", 1 << 20);
+
+    // Pooled buffers of each kind
+    private static final int POOL_SIZE = 4;
+
+    private static final Deque<char[]> CHARS = new ArrayDeque<>();
+    private static final Deque<StringBuilder> BUILDERS = new ArrayDeque<>();
+    private static final Deque<ArrayList<Block>> BLOCK_LISTS = new ArrayDeque<>();
+
+    /**
+     * Take char buffer.
+     * @param minLength minimal buffer length
+     * @return buffer of at least given length with undefined content
+     */
+    public static char[] takeChars(final int minLength) {
+        synchronized (CHARS) {
+            char[] buffer = CHARS.peekFirst();
+            if (buffer != null && buffer.length >= minLength) {
+                return CHARS.pollFirst();
+            }
+        }
+        return new char[minLength];
+    }
+
+    /**
+     * Return char buffer to the pool.
+     * @param buffer buffer
+     */
+    public static void give(final char[] buffer) {
+        if (buffer.length > CAP) {
+            return;
+        }
+        synchronized (CHARS) {
+            if (CHARS.size() < POOL_SIZE) {
+                CHARS.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * Take empty string builder.
+     * @return builder
+     */
+    public static StringBuilder takeBuilder() {
+        synchronized (BUILDERS) {
+            StringBuilder builder = BUILDERS.pollFirst();
+            if (builder != null) {
+                return builder;
+            }
+        }
+        return new StringBuilder();
+    }
+
+    /**
+     * Return string builder to the pool.
+     * @param builder builder
+     */
+    public static void give(final StringBuilder builder) {
+        if (builder.capacity() > CAP) {
+            return;
+        }
+        builder.setLength(0);
+        synchronized (BUILDERS) {
+            if (BUILDERS.size() < POOL_SIZE) {
+                BUILDERS.addFirst(builder);
+            }
+        }
+    }
+
+    /**
+     * Take empty block list.
+     * @return list
+     */
+    static ArrayList<Block> takeBlocks() {
+        synchronized (BLOCK_LISTS) {
+            ArrayList<Block> list = BLOCK_LISTS.pollFirst();
+            if (list != null) {
+                return list;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Return block list to the pool.
+     * @param list list
+     * @param peakSize largest size the list had since it was taken
+     */
+    static void giveBlocks(final ArrayList<Block> list, final int peakSize) {
+        if (peakSize > CAP) {
+            return;
+        }
+        list.clear();
+        synchronized (BLOCK_LISTS) {
+            if (BLOCK_LISTS.size() < POOL_SIZE) {
+                BLOCK_LISTS.addFirst(list);
+            }
+        }
+    }
+
+    /**
+     * Drop all pooled buffers.
+     */
+    public static void clear() {
+        synchronized (CHARS) {
+            CHARS.clear();
+        }
+        synchronized (BUILDERS) {
+            BUILDERS.clear();
+        }
+        synchronized (BLOCK_LISTS) {
+            BLOCK_LISTS.clear();
+        }
+    }
+
+    /**
+     * Number of pooled buffers of all kinds, for tests.
+     * @return pooled buffer count
+     */
+    static int size() {
+        int size;
+        synchronized (CHARS) {
+            size = CHARS.size();
+        }
+        synchronized (BUILDERS) {
+            size += BUILDERS.size();
+        }
+        synchronized (BLOCK_LISTS) {
+            size += BLOCK_LISTS.size();
+        }
+        return size;
+    }
+
+    private BufferPool() {
+        // Disable instance creation.
+    }
+}
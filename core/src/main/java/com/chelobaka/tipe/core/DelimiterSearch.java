@@ -0,0 +1,90 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+/**
+ * Finds markup delimiters in text.
+ *
+ * This is the scalar version. The multi-release jar carries a Java 21
+ * version from {@code src/main/java21}, which compares many chars at once
+ * with the Vector API when {@code jdk.incubator.vector} is available and
+ * falls back to the same loops otherwise. Both versions must give the
+ * same answers.
+ */
+final class DelimiterSearch {
+
+    private final CharSequence text;
+
+    DelimiterSearch(final CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Find first occurrence of a character in a range.
+     * @param c character
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOf(final char c, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find first occurrence of any of two characters in a range.
+     * @param a first character
+     * @param b second character
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOfEither(final char a, final char b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find first line terminator in a range, see
+     * {@link MarkupScanner#isLineTerminator(char)}.
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOfLineTerminator(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (MarkupScanner.isLineTerminator(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,108 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+/**
+ * Receiver of document events pushed by {@link DocumentParser}.
+ * All methods do nothing by default.
+ *
+ * <p>Events arrive in document order. Concatenated texts of all tag,
+ * atomic, ignorable whitespace, image macro and payload events reproduce
+ * the document. Segment event follows the last block of its segment.
+ */
+public interface DocumentHandler {
+
+    /**
+     * Document starts.
+     */
+    default void startDocument() {
+    }
+
+    /**
+     * Document ends.
+     */
+    default void endDocument() {
+    }
+
+    /**
+     * Opening formatting or block level tag.
+     * @param name tag name
+     * @param html tag text
+     * @param metaTag meta tag of formatting tag or null for block level tag
+     */
+    default void startTag(final String name, final String html, final String metaTag) {
+    }
+
+    /**
+     * Closing formatting or block level tag.
+     * @param name tag name
+     * @param html tag text
+     * @param metaTag meta tag of formatting tag or null for block level tag
+     */
+    default void endTag(final String name, final String html, final String metaTag) {
+    }
+
+    /**
+     * Self-closing block level tag.
+     * @param name tag name
+     * @param html tag text
+     */
+    default void emptyTag(final String name, final String html) {
+    }
+
+    /**
+     * Whitespace between segments.
+     * @param text text
+     */
+    default void atomic(final String text) {
+    }
+
+    /**
+     * Whitespace with a line break inside of a formatting element. It is
+     * not a part of any segment, and translated documents drop it.
+     * @param text text
+     */
+    default void ignorableWhitespace(final String text) {
+    }
+
+    /**
+     * Image macro with following whitespace.
+     * @param text text
+     */
+    default void imageMacro(final String text) {
+    }
+
+    /**
+     * Text.
+     * @param text text
+     */
+    default void payload(final String text) {
+    }
+
+    /**
+     * Translatable segment. Its bounds are relative to the parsed chunk
+     * and have no meaning for the handler.
+     * @param segment segment
+     */
+    default void segment(final Segment segment) {
+    }
+}
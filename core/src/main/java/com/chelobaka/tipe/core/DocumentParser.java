@@ -0,0 +1,227 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming parser, which pushes document events to a handler while
+ * reading. Text is tokenized in chunks cut at line starts, where no
+ * formatting element stays open, so only the current chunk is kept in
+ * memory. Events and meta tags are the same as for the whole document
+ * tokenized at once.
+ *
+ * <p>Formatting element left open till the document end prevents
+ * cutting, and the rest of the document after it is kept in memory.
+ */
+public final class DocumentParser {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int INITIAL_CUTS = 64;
+    private static final String IMG_PREFIX = "{{IMG";
+
+    private final TagSet tagSet;
+    private final DocumentHandler handler;
+    private final TokenizedDocument.ChunkState state = new TokenizedDocument.ChunkState();
+
+    // Text read, but not parsed yet
+    private final StringBuilder pending = new StringBuilder();
+
+    // Candidate cuts in pending text and scanner state after the last scanned char
+    private int[] cuts = new int[INITIAL_CUTS];
+    private int cutCount;
+    private int scanned;
+    private boolean newlineInSpaces;
+    private boolean insideTag;
+    private boolean macroStarted;
+    private boolean tagInMacro;
+    private char previous;
+
+    // Pending length at which cutting is tried again after a failure
+    private int retryLength;
+
+    private DocumentParser(final TagSet tagSet, final DocumentHandler handler) {
+        this.tagSet = tagSet;
+        this.handler = handler;
+    }
+
+    /**
+     * Parse document.
+     * @param reader document reader
+     * @param tagSet recognized tags
+     * @param handler event handler
+     * @throws IOException on read error
+     */
+    public static void parse(final Reader reader, final TagSet tagSet,
+                             final DocumentHandler handler) throws IOException {
+        parse(reader, tagSet, handler, READ_BUFFER_SIZE);
+    }
+
+    static void parse(final Reader reader, final TagSet tagSet,
+                      final DocumentHandler handler, final int bufferSize) throws IOException {
+        new DocumentParser(tagSet, handler).run(reader, bufferSize);
+    }
+
+    private void run(final Reader reader, final int bufferSize) throws IOException {
+        handler.startDocument();
+        char[] buffer = new char[bufferSize];
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            pending.append(buffer, 0, read);
+            findCuts();
+            if (cutCount > 0 && pending.length() >= retryLength) {
+                cut();
+            }
+        }
+        emit(TokenizedDocument.tokenizeChunk(pending.toString(), tagSet, state));
+        handler.endDocument();
+    }
+
+    /**
+     * Find line starts after whitespace, which are not inside of a tag.
+     * Image macro with tags inside overlaps them, and line after it
+     * is not a cut either.
+     */
+    private void findCuts() {
+        for (; scanned < pending.length(); scanned++) {
+            char c = pending.charAt(scanned);
+            if (MarkupScanner.isSpace(c)) {
+                newlineInSpaces |= c == '\n';
+                previous = c;
+                continue;
+            }
+            if (newlineInSpaces) {
+                if (!insideTag && !tagInMacro) {
+                    if (cutCount == cuts.length) {
+                        cuts = Arrays.copyOf(cuts, cutCount * 2);
+                    }
+                    cuts[cutCount++] = scanned;
+                }
+                newlineInSpaces = false;
+                macroStarted = false;
+                tagInMacro = false;
+            }
+            if (c == '<') {
+                insideTag = true;
+                tagInMacro |= macroStarted;
+            } else if (c == '>') {
+                insideTag = false;
+            } else if (c == '{' && previous == '{') {
+                macroStarted = true;
+            }
+            previous = c;
+        }
+    }
+
+    /**
+     * Parse pending text up to the last safe cut.
+     */
+    private void cut() {
+        int last = cuts[cutCount - 1];
+        int cut = TokenizedDocument.closedPrefix(pending.substring(0, last), tagSet,
+                cuts, cutCount);
+        if (cut < 0) {
+            retryLength = pending.length() * 2;
+            return;
+        }
+        emit(TokenizedDocument.tokenizeChunk(pending.substring(0, cut), tagSet, state));
+        pending.delete(0, cut);
+        scanned -= cut;
+
+        int kept = 0;
+        for (int c = 0; c < cutCount; c++) {
+            if (cuts[c] > cut) {
+                cuts[kept++] = cuts[c] - cut;
+            }
+        }
+        cutCount = kept;
+        if (cut < last) {
+            retryLength = pending.length() * 2;
+        } else {
+            retryLength = 0;
+        }
+    }
+
+    private void emit(final TokenizedDocument chunk) {
+        boolean payloadInCache = false;
+        List<Block> cache = new ArrayList<>();
+        // Blank atomics inside formatting elements are removed from blocks
+        int covered = 0;
+
+        for (Block block : chunk.getBlocks()) {
+            if (block.getStart() > covered) {
+                handler.ignorableWhitespace(chunk.substring(covered, block.getStart()));
+            }
+            covered = Math.max(covered, block.getEnd());
+            String text = chunk.substring(block.getStart(), block.getEnd());
+            switch (block.getType()) {
+                case ATOMIC:
+                    if (payloadInCache) {
+                        handler.segment(Segment.of(chunk, cache));
+                    }
+                    payloadInCache = false;
+                    cache.clear();
+                    emitAtomic(block, text);
+                    break;
+                case PAYLOAD:
+                    payloadInCache = true;
+                    cache.add(block);
+                    handler.payload(text);
+                    break;
+                case TAG:
+                    cache.add(block);
+                    HTMLTag tag = (HTMLTag) block;
+                    if (tag.isOpening()) {
+                        handler.startTag(tag.getName(), text, tag.getMetaBody());
+                    } else {
+                        handler.endTag(tag.getName(), text, tag.getMetaBody());
+                    }
+                    break;
+                default:
+            }
+        }
+    }
+
+    private void emitAtomic(final Block block, final String text) {
+        if (block instanceof BlockTag) {
+            BlockTag tag = (BlockTag) block;
+            switch (tag.getTagType()) {
+                case OPENING:
+                    handler.startTag(tag.getName(), text, null);
+                    break;
+                case CLOSING:
+                    handler.endTag(tag.getName(), text, null);
+                    break;
+                default:
+                    handler.emptyTag(tag.getName(), text);
+            }
+        } else if (text.startsWith(IMG_PREFIX)) {
+            handler.imageMacro(text);
+        } else if (!text.isEmpty()) {
+            handler.atomic(text);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element tree of a tokenized document covering both block level and
+ * formatting tags. Nodes live in primitive arrays and are addressed by
+ * index; node 0 is the document itself. All queries by node or block
+ * index take constant time.
+ *
+ * <p>Broken markup never fails the build: a closing tag without an open
+ * element is left orphan, and elements left open by a closing tag of an
+ * outer element are closed implicitly.
+ */
+public final class DocumentTree {
+
+    /** Index of the document node. */
+    public static final int ROOT = 0;
+
+    /** Missing node or block index. */
+    public static final int NONE = -1;
+
+    // Node data
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] lastChild;
+    private final int[] nextSibling;
+    private final int[] openBlock;
+    private final int[] closeBlock;
+    private final int[] nodeContainer;
+    private final String[] names;
+    private final boolean[] blockLevel;
+    private int nodeCount;
+
+    // Block data
+    private final int[] blockStarts;
+    private final int[] blockNode;
+    private final int[] blockParent;
+    private final int[] blockPair;
+
+    private DocumentTree(final int blockCount) {
+        int capacity = blockCount + 1;
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        openBlock = new int[capacity];
+        closeBlock = new int[capacity];
+        nodeContainer = new int[capacity];
+        names = new String[capacity];
+        blockLevel = new boolean[capacity];
+        blockStarts = new int[blockCount];
+        blockNode = new int[blockCount];
+        blockParent = new int[blockCount];
+        blockPair = new int[blockCount];
+        Arrays.fill(blockNode, NONE);
+        Arrays.fill(blockPair, NONE);
+    }
+
+    /**
+     * Build tree in one pass over document blocks.
+     * @param blocks document blocks in document order
+     * @return document tree
+     */
+    public static DocumentTree build(final List<Block> blocks) {
+        DocumentTree tree = new DocumentTree(blocks.size());
+        tree.addNode(NONE, null, NONE, true);
+
+        // Open elements
+        int[] stack = new int[blocks.size() + 1];
+        int top = 0;
+        stack[top] = ROOT;
+        boolean[] open = new boolean[blocks.size() + 1];
+        open[ROOT] = true;
+
+        // Open block level elements by name and formatting elements by their closing tag
+        Map<String, Deque<Integer>> openBlocks = new HashMap<>();
+        Map<HTMLTag, Integer> pendingPairs = new IdentityHashMap<>();
+
+        for (int k = 0; k < blocks.size(); k++) {
+            Block block = blocks.get(k);
+            tree.blockStarts[k] = block.getStart();
+            tree.blockParent[k] = stack[top];
+
+            String name = null;
+            TagType tagType = null;
+            boolean isBlockTag = false;
+            if (block instanceof HTMLTag) {
+                name = ((HTMLTag) block).getName();
+                tagType = ((HTMLTag) block).getTagType();
+            } else if (block instanceof BlockTag) {
+                name = ((BlockTag) block).getName();
+                tagType = ((BlockTag) block).getTagType();
+                isBlockTag = true;
+            }
+            if (name == null) {
+                continue;
+            }
+
+            if (tagType != TagType.CLOSING) {
+                int node = tree.addNode(stack[top], name, k, isBlockTag);
+                tree.blockNode[k] = node;
+                if (tagType == TagType.OPENING) {
+                    stack[++top] = node;
+                    open[node] = true;
+                    if (isBlockTag) {
+                        openBlocks.computeIfAbsent(name, n -> new ArrayDeque<>()).push(node);
+                    } else if (((HTMLTag) block).hasPair()) {
+                        pendingPairs.put(((HTMLTag) block).getPair(), node);
+                    }
+                }
+                continue;
+            }
+
+            // Find element closed by this tag
+            Integer node;
+            if (isBlockTag) {
+                Deque<Integer> named = openBlocks.get(name);
+                if (named == null) {
+                    node = null;
+                } else {
+                    node = named.peek();
+                }
+            } else {
+                node = pendingPairs.remove(block);
+            }
+            if (node == null) {
+                continue;
+            }
+
+            tree.closeBlock[node] = k;
+            tree.blockNode[k] = node;
+            tree.blockPair[k] = tree.openBlock[node];
+            tree.blockPair[tree.openBlock[node]] = k;
+
+            // Close the element and everything left open inside it
+            if (open[node]) {
+                int closed;
+                do {
+                    closed = stack[top--];
+                    open[closed] = false;
+                    if (tree.blockLevel[closed]) {
+                        openBlocks.get(tree.names[closed]).pop();
+                    }
+                } while (closed != node);
+            }
+            tree.blockParent[k] = tree.parent[node];
+        }
+        return tree;
+    }
+
+    private int addNode(final int parentNode, final String name, final int block,
+                        final boolean isBlockLevel) {
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        nextSibling[node] = NONE;
+        openBlock[node] = block;
+        closeBlock[node] = NONE;
+        names[node] = name;
+        blockLevel[node] = isBlockLevel;
+        if (isBlockLevel || parentNode == NONE) {
+            nodeContainer[node] = node;
+        } else {
+            nodeContainer[node] = nodeContainer[parentNode];
+        }
+        if (parentNode != NONE) {
+            if (firstChild[parentNode] == NONE) {
+                firstChild[parentNode] = node;
+            } else {
+                nextSibling[lastChild[parentNode]] = node;
+            }
+            lastChild[parentNode] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Get number of nodes including the document node.
+     * @return node count
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    public int getParent(final int node) {
+        return parent[node];
+    }
+
+    public int getFirstChild(final int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(final int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * Get tag name of element.
+     * @param node node
+     * @return tag name or null for the document node
+     */
+    public String getName(final int node) {
+        return names[node];
+    }
+
+    public boolean isBlockLevel(final int node) {
+        return blockLevel[node];
+    }
+
+    /**
+     * Get block opening element.
+     * @param node node
+     * @return block index or {@link #NONE} for the document node
+     */
+    public int getOpenBlock(final int node) {
+        return openBlock[node];
+    }
+
+    /**
+     * Get block closing element.
+     * @param node node
+     * @return block index or {@link #NONE} for unclosed and self-closing elements
+     */
+    public int getCloseBlock(final int node) {
+        return closeBlock[node];
+    }
+
+    /**
+     * Get innermost block level element containing element.
+     * @param node node
+     * @return block level node or {@link #ROOT}
+     */
+    public int getContainer(final int node) {
+        if (node == ROOT) {
+            return ROOT;
+        }
+        return nodeContainer[parent[node]];
+    }
+
+    /**
+     * Get element opened or closed by a tag block.
+     * @param block block index
+     * @return node or {@link #NONE} for other blocks and orphan closing tags
+     */
+    public int getNodeOf(final int block) {
+        return blockNode[block];
+    }
+
+    /**
+     * Get pair of a tag block.
+     * @param block block index
+     * @return block index of pair tag or {@link #NONE}
+     */
+    public int getPairOf(final int block) {
+        return blockPair[block];
+    }
+
+    /**
+     * Get innermost element containing a block.
+     * Tags of an element are contained by its parent.
+     * @param block block index
+     * @return node
+     */
+    public int getEnclosing(final int block) {
+        return blockParent[block];
+    }
+
+    /**
+     * Get innermost block level element containing a block.
+     * @param block block index
+     * @return block level node or {@link #ROOT}
+     */
+    public int getEnclosingBlock(final int block) {
+        return nodeContainer[blockParent[block]];
+    }
+
+    /**
+     * Find block containing document offset. Takes logarithmic time.
+     * @param offset document offset
+     * @return block index or {@link #NONE} if offset is before the first block
+     */
+    public int getBlockAt(final int offset) {
+        int index = Arrays.binarySearch(blockStarts, offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,292 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Walks tokenized documents segment by segment and writes them back.
+ */
+public final class DocumentWriter {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Receiver of output text.
+     */
+    public interface TextSink {
+        /**
+         * Write text.
+         * @param text text
+         * @throws IOException on write error
+         */
+        void write(String text) throws IOException;
+    }
+
+    /**
+     * Produces output of a segment.
+     */
+    public interface SegmentRenderer {
+        /**
+         * Render segment.
+         * @param segment segment
+         * @return output text
+         * @throws IOException on failure
+         */
+        String render(Segment segment) throws IOException;
+    }
+
+    /**
+     * Receiver of document segments.
+     */
+    public interface SegmentVisitor {
+        /**
+         * Visit segment.
+         * @param segment segment
+         * @param firstBlock index of the first segment block
+         */
+        void visit(Segment segment, int firstBlock);
+    }
+
+    /**
+     * Provides translations of segments and links.
+     */
+    public interface Translator {
+        /**
+         * Translate segment text.
+         * @param source segment text with meta tags
+         * @param comment segment comment with hrefs or null
+         * @return translation with meta tags
+         */
+        String translate(String source, String comment);
+
+        /**
+         * Translate anchor href.
+         * @param href href
+         * @param metaTag meta tag of the anchor
+         * @return translated href
+         */
+        default String translateHref(final String href, final String metaTag) {
+            return href;
+        }
+    }
+
+    /**
+     * Read whole document as is.
+     * @param reader reader
+     * @return document text
+     * @throws IOException on read error
+     */
+    public static String read(final Reader reader) throws IOException {
+        char[] buffer = BufferPool.takeChars(READ_BUFFER_SIZE);
+        int length = 0;
+        int read;
+        try {
+            while ((read = reader.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+            }
+            return new String(buffer, 0, length);
+        } finally {
+            BufferPool.give(buffer);
+        }
+    }
+
+    /**
+     * Write document. Blocks without payload are written as is,
+     * block groups with payload are rendered as segments.
+     * @param document document
+     * @param sink output
+     * @param renderer segment renderer
+     * @throws IOException on write error
+     */
+    public static void write(final TokenizedDocument document, final TextSink sink,
+                             final SegmentRenderer renderer) throws IOException {
+        if (document.getTagSet().isCoalesce()) {
+            SegmentCoalescer.walk(document, new SegmentCoalescer.Output() {
+                @Override
+                public void segment(final Segment segment, final int firstBlock)
+                        throws IOException {
+                    sink.write(renderer.render(segment));
+                }
+
+                @Override
+                public void text(final String text) throws IOException {
+                    sink.write(text);
+                }
+            });
+            return;
+        }
+        ArrayList<Block> cache = BufferPool.takeBlocks();
+        // Cache is cleared after each group, so its backing array grows to the
+        // peak size. The peak is unknown after a failure, and the list is dropped.
+        int peakSize = Integer.MAX_VALUE;
+
+        try {
+            peakSize = writeBlocks(document, sink, renderer, cache);
+        } finally {
+            BufferPool.giveBlocks(cache, peakSize);
+        }
+    }
+
+    /**
+     * Write document blocks grouping them in cache.
+     * @return largest cache size
+     */
+    private static int writeBlocks(final TokenizedDocument document, final TextSink sink,
+                                   final SegmentRenderer renderer, final List<Block> cache)
+            throws IOException {
+        boolean payloadInCache = false;
+        int peakSize = 0;
+        for (Block block : document.getBlocks()) {
+            switch (block.getType()) {
+                case ATOMIC: // The last one is dummy atomic
+                    peakSize = Math.max(peakSize, cache.size());
+                    if (cache.size() > 0) {
+                        if (payloadInCache) {
+                            sink.write(renderer.render(Segment.of(document, cache)));
+                        } else {
+                            int cacheStart = cache.get(0).getStart();
+                            int cacheEnd = cache.get(cache.size() - 1).getEnd();
+                            sink.write(document.substring(cacheStart, cacheEnd));
+                        }
+                        payloadInCache = false;
+                        cache.clear();
+                    }
+                    sink.write(document.substring(block.getStart(), block.getEnd()));
+                    break;
+                case PAYLOAD:
+                    payloadInCache = true; // No break here
+                case TAG:
+                    cache.add(block);
+                default:
+            }
+        }
+        return peakSize;
+    }
+
+    /**
+     * Translate document.
+     * @param document document
+     * @param sink output
+     * @param translator translation provider
+     * @throws IOException on write error
+     */
+    public static void translate(final TokenizedDocument document, final TextSink sink,
+                                 final Translator translator) throws IOException {
+        write(document, sink, segment -> {
+            String translation = translator.translate(segment.getSource(), segment.getComment());
+            Map<String, String> translatedHrefs = new LinkedHashMap<>();
+            for (Map.Entry<String, String> hrefEntry : segment.getHrefs().entrySet()) {
+                translatedHrefs.putIfAbsent(hrefEntry.getValue(),
+                        translator.translateHref(hrefEntry.getValue(), hrefEntry.getKey()));
+            }
+            return segment.restore(translation, translatedHrefs);
+        });
+    }
+
+    /**
+     * Check if document with untranslated segments renders back to its text
+     * and every untranslated segment renders back to its own text.
+     * @param document document
+     * @return check result
+     */
+    static boolean rendersIdentity(final TokenizedDocument document) {
+        boolean[] exact = {true};
+        StringBuilder output = new StringBuilder(document.length());
+        try {
+            write(document, output::append, segment -> {
+                String rendered = segment.restore(segment.getSource(), Collections.emptyMap());
+                if (!rendered.equals(document.substring(segment.getGroupStart(),
+                        segment.getGroupEnd()))) {
+                    exact[0] = false;
+                }
+                return rendered;
+            });
+        } catch (IOException e) {
+            // String builder does not throw
+            throw new IllegalStateException(e);
+        }
+        return exact[0] && output.toString().equals(document.substring(0, document.length()));
+    }
+
+    /**
+     * Visit document segments without building any output.
+     * @param document document
+     * @param visitor segment visitor
+     */
+    public static void scan(final TokenizedDocument document, final SegmentVisitor visitor) {
+        if (document.getTagSet().isCoalesce()) {
+            try {
+                SegmentCoalescer.walk(document, new SegmentCoalescer.Output() {
+                    @Override
+                    public void segment(final Segment segment, final int firstBlock) {
+                        visitor.visit(segment, firstBlock);
+                    }
+
+                    @Override
+                    public void text(final String text) {
+                        // Only segments are visited
+                    }
+                });
+            } catch (IOException e) {
+                // Output above does not throw
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        List<Block> blocks = document.getBlocks();
+        boolean payloadInCache = false;
+        List<Block> cache = new ArrayList<>();
+
+        for (int k = 0; k < blocks.size(); k++) {
+            Block block = blocks.get(k);
+            switch (block.getType()) {
+                case ATOMIC: // The last one is dummy atomic
+                    if (payloadInCache) {
+                        visitor.visit(Segment.of(document, cache), k - cache.size());
+                    }
+                    payloadInCache = false;
+                    cache.clear();
+                    break;
+                case PAYLOAD:
+                    payloadInCache = true; // No break here
+                case TAG:
+                    cache.add(block);
+                default:
+            }
+        }
+    }
+
+    private DocumentWriter() {
+        // Disable instance creation.
+    }
+}
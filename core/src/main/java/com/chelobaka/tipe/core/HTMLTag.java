@@ -0,0 +1,112 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+/**
+ * Helper class for HTML tag objects.
+ */
+public final class HTMLTag extends Block {
+    private final String name;
+    private final TagType tagType;
+    private final boolean markdown;
+    private String metaBody;
+    // Bounds of href attribute value in document. Href would be sent inside
+    // entry comment to OmegaT to pass links to the editor.
+    private int hrefStart = -1;
+    private int hrefEnd = -1;
+    private HTMLTag pair;
+
+    public String getMetaBody() {
+        return metaBody;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HTMLTag getPair() {
+        return pair;
+    }
+
+    public boolean hasPair() {
+        return pair != null;
+    }
+
+    boolean hasMetaBody() {
+        return metaBody != null;
+    }
+
+    public boolean isOpening() {
+        return tagType == TagType.OPENING;
+    }
+
+    public TagType getTagType() {
+        return tagType;
+    }
+
+    /**
+     * Check if tag is markdown syntax, such as {@code **} or {@code ](url)}.
+     * @return check result
+     */
+    public boolean isMarkdown() {
+        return markdown;
+    }
+
+    void setMetaBody(final String metaBody) {
+        this.metaBody = metaBody;
+    }
+
+    void setPair(final HTMLTag pair) {
+        this.pair = pair;
+    }
+
+    public boolean hasHref() {
+        return hrefStart >= 0;
+    }
+
+    public int getHrefStart() {
+        return hrefStart;
+    }
+
+    public int getHrefEnd() {
+        return hrefEnd;
+    }
+
+    void setHref(final int start, final int end) {
+        hrefStart = start;
+        hrefEnd = end;
+    }
+
+    HTMLTag(final String name, final int start, final int end, final TagType tagType) {
+        this(name, start, end, tagType, false);
+    }
+
+    HTMLTag(final String name, final int start, final int end, final TagType tagType,
+            final boolean markdown) {
+        super(BlockType.TAG, start, end);
+        this.name = name;
+        this.tagType = tagType;
+        this.markdown = markdown;
+        metaBody = null;
+        pair = null;
+    }
+}
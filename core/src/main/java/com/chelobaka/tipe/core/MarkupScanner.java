@@ -0,0 +1,636 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Linear time scanner for tipe³ markup.
+ *
+ * Every scan method reproduces matches of the regular expression named
+ * in its comment, but never looks at the same character twice for
+ * different match attempts. Regular expressions with lazy or unbounded
+ * quantifiers rescan the rest of the line or document for every
+ * unterminated construct and become quadratic on malformed input.
+ */
+final class MarkupScanner {
+
+    /**
+     * Receiver of found matches.
+     */
+    interface MatchConsumer {
+        /**
+         * Accept match.
+         * @param name matched tag name or null for non-tag matches
+         * @param start match start
+         * @param end match end
+         */
+        void accept(String name, int start, int end);
+    }
+
+    /**
+     * Receiver of found tag pairs.
+     */
+    interface PairConsumer {
+        /**
+         * Accept tag pair.
+         * @param name tag name
+         * @param openStart opening tag start
+         * @param openEnd opening tag end
+         * @param closeStart closing tag start
+         * @param closeEnd closing tag end
+         */
+        void accept(String name, int openStart, int openEnd, int closeStart, int closeEnd);
+    }
+
+    /**
+     * Finds next occurrence of a character at or after given position.
+     * Remembers last answer, so monotone queries cost linear time in total.
+     */
+    private static final class CharFinder {
+        private final DelimiterSearch search;
+        private final int length;
+        private final char target;
+        private int from = Integer.MAX_VALUE;
+        private int found = -1;
+
+        CharFinder(final MarkupScanner scanner, final char target) {
+            this.search = scanner.search;
+            this.length = scanner.length;
+            this.target = target;
+        }
+
+        int find(final int position) {
+            if (position >= from && (found < 0 || found >= position)) {
+                return found;
+            }
+            if (position < from && from != Integer.MAX_VALUE) {
+                // Check the gap before cached range only
+                int gapFound = search.indexOf(target, position, from);
+                if (gapFound >= 0) {
+                    return gapFound;
+                }
+                return found;
+            }
+            from = position;
+            found = search.indexOf(target, position, length);
+            return found;
+        }
+    }
+
+    /**
+     * Finds next line terminator as understood by regex dot.
+     */
+    private static final class LineEndFinder {
+        private final DelimiterSearch search;
+        private final int length;
+        private int from = Integer.MAX_VALUE;
+        private int found = -1;
+
+        LineEndFinder(final MarkupScanner scanner) {
+            this.search = scanner.search;
+            this.length = scanner.length;
+        }
+
+        int find(final int position) {
+            if (position >= from && (found < 0 || found >= position)) {
+                return found;
+            }
+            from = position;
+            found = search.indexOfLineTerminator(position, length);
+            return found;
+        }
+    }
+
+    /**
+     * Finds next {@code "}}"} at or after given position. Remembers last
+     * answer like {@link CharFinder}, so single braces between the queries
+     * are only looked at once.
+     */
+    private static final class CloseBracesFinder {
+        private final MarkupScanner scanner;
+        private int from = Integer.MAX_VALUE;
+        private int found = -1;
+
+        CloseBracesFinder(final MarkupScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        int find(final int position) {
+            if (position >= from && (found < 0 || found >= position)) {
+                return found;
+            }
+            if (position < from && from != Integer.MAX_VALUE) {
+                // Check the gap before cached range only
+                int gapFound = scan(position, from);
+                if (gapFound >= 0) {
+                    return gapFound;
+                }
+                return found;
+            }
+            from = position;
+            found = scan(position, scanner.length);
+            return found;
+        }
+
+        /**
+         * Find first brace of a {@code "}}"} pair starting before end.
+         */
+        private int scan(final int start, final int end) {
+            int brace = scanner.search.indexOf('}', start, end);
+            while (brace >= 0) {
+                if (brace + 1 >= scanner.length) {
+                    return -1;
+                }
+                if (scanner.text.charAt(brace + 1) == '}') {
+                    return brace;
+                }
+                brace = scanner.search.indexOf('}', brace + 1, end);
+            }
+            return -1;
+        }
+    }
+
+    private static final String IMG_PREFIX = "{{IMG";
+    private static final String HREF_PREFIX = "href=\"";
+
+    // Markdown heading is up to 3 spaces, 1 to 6 '#' and a space
+    private static final int MAX_HEADING_INDENT = 3;
+    private static final int MAX_HEADING_LEVEL = 6;
+
+    /** First line indent of a text whose first line can not be a heading. */
+    static final int NO_HEADING = -1;
+
+    // Markdown emphasis delimiters and tag names they stand for
+    private static final String[] EMPHASIS_DELIMITERS = {"*", "**", "_", "__"};
+    private static final String[] EMPHASIS_TAGS = {"em", "strong", "em", "strong"};
+
+    /** Tag name of markdown links. */
+    static final String LINK_TAG = "a";
+
+    private final CharSequence text;
+    private final int length;
+    private final DelimiterSearch search;
+
+    MarkupScanner(final CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+        this.search = new DelimiterSearch(text);
+    }
+
+    /**
+     * Whitespace as in regex {@code \s}.
+     * @param c character
+     * @return check result
+     */
+    static boolean isSpace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Line terminators as in regex dot.
+     * @param c character
+     * @return check result
+     */
+    static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Check if text range consists of whitespace only.
+     * @param start range start
+     * @param end range end
+     * @return check result, false for empty range
+     */
+    boolean isBlank(final int start, final int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isSpace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipSpaces(final int position) {
+        int i = position;
+        while (i < length && isSpace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean startsWith(final String prefix, final int position) {
+        if (position + prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(position + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find atomic blocks: {@code ^\s+|\{\{IMG.+?}}\s*|\n\s*}.
+     * @param consumer match consumer
+     */
+    void scanAtomics(final MatchConsumer consumer) {
+        CloseBracesFinder bracesFinder = new CloseBracesFinder(this);
+        LineEndFinder lineEndFinder = new LineEndFinder(this);
+
+        int i = 0;
+        if (length > 0 && isSpace(text.charAt(0))) {
+            i = skipSpaces(0);
+            consumer.accept(null, 0, i);
+        }
+
+        while (i < length) {
+            i = search.indexOfEither('{', '\n', i, length);
+            if (i < 0) {
+                break;
+            }
+            char c = text.charAt(i);
+            if (c == '{' && startsWith(IMG_PREFIX, i)) {
+                // Lazy ".+?" stops at the first "}}" after at least one character
+                int contentStart = i + IMG_PREFIX.length();
+                int close = bracesFinder.find(contentStart + 1);
+                if (close >= 0) {
+                    int lineEnd = lineEndFinder.find(contentStart);
+                    if (lineEnd < 0 || lineEnd >= close) {
+                        int end = skipSpaces(close + 2);
+                        consumer.accept(null, i, end);
+                        i = end;
+                        continue;
+                    }
+                }
+            } else if (c == '\n') {
+                int end = skipSpaces(i + 1);
+                consumer.accept(null, i, end);
+                i = end;
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Find block level tags: {@code </*(?:names)(?:[^>])*> *}.
+     * @param names tag names
+     * @param consumer match consumer
+     */
+    void scanBlockTags(final TagNames names, final MatchConsumer consumer) {
+        CharFinder gtFinder = new CharFinder(this, '>');
+        int i = 0;
+        while (i < length) {
+            i = search.indexOf('<', i, length);
+            if (i < 0) {
+                break;
+            }
+            int nameStart = i + 1;
+            while (nameStart < length && text.charAt(nameStart) == '/') {
+                nameStart++;
+            }
+            String name = names.match(text, nameStart);
+            if (name != null) {
+                int gt = gtFinder.find(nameStart + name.length());
+                if (gt >= 0) {
+                    int end = gt + 1;
+                    while (end < length && text.charAt(end) == ' ') {
+                        end++;
+                    }
+                    consumer.accept(name, i, end);
+                    i = end;
+                    continue;
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Find opening tags: {@code <(names)(?:[^>])*>}.
+     * @param names tag names
+     * @param consumer match consumer
+     */
+    void scanOpeningTags(final TagNames names, final MatchConsumer consumer) {
+        CharFinder gtFinder = new CharFinder(this, '>');
+        int i = 0;
+        while (i < length) {
+            i = search.indexOf('<', i, length);
+            if (i < 0) {
+                break;
+            }
+            String name = names.match(text, i + 1);
+            if (name != null) {
+                int gt = gtFinder.find(i + 1 + name.length());
+                if (gt >= 0) {
+                    consumer.accept(name, i, gt + 1);
+                    i = gt + 1;
+                    continue;
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Find closing tags: {@code </(names)>}.
+     * @param names tag names
+     * @param consumer match consumer
+     */
+    void scanClosingTags(final TagNames names, final MatchConsumer consumer) {
+        int i = 0;
+        while (i < length - 1) {
+            i = search.indexOf('<', i, length - 1);
+            if (i < 0) {
+                break;
+            }
+            if (text.charAt(i + 1) != '/') {
+                i++;
+                continue;
+            }
+            int nameStart = i + 2;
+            String found = names.match(text, nameStart, '>');
+            if (found != null) {
+                int end = nameStart + found.length() + 1;
+                consumer.accept(found, i, end);
+                i = end;
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Find markdown headings, emphasis and links in one walk. Heading
+     * markers ({@code ## }) at line starts go to the atomic consumer.
+     * Emphasis ({@code *em*}, {@code **strong**} and the same with
+     * underscores) and links ({@code [text](url)}) go to the pair consumer
+     * with tag names {@code em}, {@code strong} and {@code a}; the closing
+     * tag of a link is {@code ](url)}. Pairs never span lines and always
+     * nest properly. Nothing is found inside HTML tags, {@code {{...}}}
+     * macros and code spans, and backslash escapes a delimiter.
+     * @param firstIndent spaces before the text on its first line, or
+     *                    {@link #NO_HEADING} if that line can not be a heading
+     * @param atomics receives heading markers
+     * @param pairs receives tag pairs
+     */
+    void scanMarkdown(final int firstIndent, final MatchConsumer atomics,
+                      final PairConsumer pairs) {
+        CharFinder gtFinder = new CharFinder(this, '>');
+        CloseBracesFinder bracesFinder = new CloseBracesFinder(this);
+        CharFinder backtickFinder = new CharFinder(this, '`');
+        CharFinder parenFinder = new CharFinder(this, ')');
+        CharFinder spaceFinder = new CharFinder(this, ' ');
+        CharFinder ltFinder = new CharFinder(this, '<');
+        LineEndFinder lineEndFinder = new LineEndFinder(this);
+
+        // Starts of unclosed delimiters by kind, link openers last
+        Deque<Integer>[] openers = newOpeners(EMPHASIS_DELIMITERS.length + 1);
+        Deque<Integer> links = openers[EMPHASIS_DELIMITERS.length];
+
+        boolean lineStart = true;
+        int indent = firstIndent;
+        int i = 0;
+        while (i < length) {
+            if (lineStart) {
+                lineStart = false;
+                int end = headingEnd(i, indent);
+                if (end > 0) {
+                    atomics.accept(null, skipIndent(i, indent), end);
+                    i = end;
+                    continue;
+                }
+            }
+            char c = text.charAt(i);
+            int lineEnd = lineEndFinder.find(i);
+            if (isLineTerminator(c)) {
+                clear(openers);
+                lineStart = true;
+                indent = 0;
+                i++;
+            } else if (c == '\\' && i + 1 < length && !isLineTerminator(text.charAt(i + 1))) {
+                i += 2;
+            } else if (c == '<' && i + 1 < length && isTagStart(text.charAt(i + 1))
+                    && gtFinder.find(i + 1) >= 0) {
+                int gt = gtFinder.find(i + 1);
+                if (lineEnd >= 0 && lineEnd < gt) {
+                    clear(openers);
+                }
+                i = gt + 1;
+            } else if (c == '{' && startsWith("{{", i)) {
+                int close = bracesFinder.find(i + 2);
+                if (close >= 0 && (lineEnd < 0 || close < lineEnd)) {
+                    i = close + 2;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '`') {
+                int close = backtickFinder.find(i + 1);
+                if (close >= 0 && (lineEnd < 0 || close < lineEnd)) {
+                    i = close + 1;
+                } else {
+                    i++;
+                }
+            } else if (c == '[') {
+                links.push(i);
+                i++;
+            } else if (c == ']' && !links.isEmpty()) {
+                // Bracket closes the nearest opener whether it makes a link or not
+                int open = links.pop();
+                int close = parenFinder.find(i + 2);
+                int space = spaceFinder.find(i + 2);
+                int lt = ltFinder.find(i + 2);
+                boolean image = open > 0 && text.charAt(open - 1) == '!';
+                if (!image && startsWith("](", i) && close > i + 2
+                        && (lineEnd < 0 || close < lineEnd)
+                        && (space < 0 || space > close) && (lt < 0 || lt > close)) {
+                    dropOpenersAfter(openers, open);
+                    pairs.accept(LINK_TAG, open, open + 1, i, close + 1);
+                    i = close + 1;
+                } else {
+                    i++;
+                }
+            } else if (c == '*' || c == '_') {
+                i = scanEmphasis(i, openers, pairs);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Handle a run of emphasis delimiters.
+     * @return position after the run
+     */
+    private int scanEmphasis(final int start, final Deque<Integer>[] openers,
+                             final PairConsumer pairs) {
+        char c = text.charAt(start);
+        int end = start;
+        while (end < length && text.charAt(end) == c) {
+            end++;
+        }
+        int kind = -1;
+        for (int k = 0; k < EMPHASIS_DELIMITERS.length; k++) {
+            String delimiter = EMPHASIS_DELIMITERS[k];
+            if (delimiter.charAt(0) == c && delimiter.length() == end - start) {
+                kind = k;
+            }
+        }
+        if (kind < 0) {
+            // Longer runs are left as text
+            return end;
+        }
+
+        char before = '\n';
+        if (start > 0) {
+            before = text.charAt(start - 1);
+        }
+        char after = '\n';
+        if (end < length) {
+            after = text.charAt(end);
+        }
+        boolean canOpen = !isSpace(after) && !isLineTerminator(after);
+        boolean canClose = !isSpace(before) && !isLineTerminator(before);
+        if (c == '_') {
+            // No intraword emphasis with underscores
+            canOpen &= !Character.isLetterOrDigit(before);
+            canClose &= !Character.isLetterOrDigit(after);
+        }
+
+        Deque<Integer> stack = openers[kind];
+        if (canClose && !stack.isEmpty()) {
+            int open = stack.pop();
+            dropOpenersAfter(openers, open);
+            pairs.accept(EMPHASIS_TAGS[kind], open, open + end - start, start, end);
+        } else if (canOpen) {
+            stack.push(start);
+        }
+        return end;
+    }
+
+    /**
+     * Forget delimiters opened after given position, they can't close
+     * without crossing the pair closed now.
+     */
+    private static void dropOpenersAfter(final Deque<Integer>[] openers, final int position) {
+        for (Deque<Integer> stack : openers) {
+            while (!stack.isEmpty() && stack.peek() > position) {
+                stack.pop();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Deque<Integer>[] newOpeners(final int count) {
+        Deque<Integer>[] result = new Deque[count];
+        for (int k = 0; k < count; k++) {
+            result[k] = new ArrayDeque<>();
+        }
+        return result;
+    }
+
+    private static void clear(final Deque<Integer>[] openers) {
+        for (Deque<Integer> stack : openers) {
+            stack.clear();
+        }
+    }
+
+    private static boolean isTagStart(final char c) {
+        return c == '/' || c == '!' || Character.isLetter(c);
+    }
+
+    /**
+     * Skip heading indent.
+     * @param position line start
+     * @param indent spaces of the line before the position
+     */
+    private int skipIndent(final int position, final int indent) {
+        int i = position;
+        while (i < length && indent + i - position < MAX_HEADING_INDENT
+                && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Get end of markdown heading marker at line start: {@code ^ {0,3}#{1,6}[ \t]+}.
+     * @param position line start
+     * @param indent spaces of the line before the position
+     * @return marker end or -1
+     */
+    private int headingEnd(final int position, final int indent) {
+        if (indent < 0 || indent > MAX_HEADING_INDENT) {
+            return -1;
+        }
+        int hashes = skipIndent(position, indent);
+        int i = hashes;
+        while (i < length && text.charAt(i) == '#') {
+            i++;
+        }
+        if (i == hashes || i - hashes > MAX_HEADING_LEVEL || i >= length) {
+            return -1;
+        }
+        if (text.charAt(i) != ' ' && text.charAt(i) != '\t') {
+            return -1;
+        }
+        while (i < length && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Find href attribute value: first group of {@code href="(.+?)"}.
+     * @param start range start
+     * @param end range end
+     * @param consumer receives value bounds
+     */
+    void findHref(final int start, final int end, final MatchConsumer consumer) {
+        CharSequence range = text.subSequence(start, end);
+        MarkupScanner scanner = new MarkupScanner(range);
+        CharFinder quoteFinder = new CharFinder(scanner, '"');
+        LineEndFinder lineEndFinder = new LineEndFinder(scanner);
+        int rangeLength = range.length();
+        for (int i = 0; i < rangeLength; i++) {
+            if (range.charAt(i) != 'h' || !scanner.startsWith(HREF_PREFIX, i)) {
+                continue;
+            }
+            int valueStart = i + HREF_PREFIX.length();
+            int quote = quoteFinder.find(valueStart + 1);
+            if (quote < 0) {
+                return;
+            }
+            int lineEnd = lineEndFinder.find(valueStart);
+            if (lineEnd < 0 || lineEnd >= quote) {
+                consumer.accept(null, start + valueStart, start + quote);
+                return;
+            }
+        }
+    }
+}
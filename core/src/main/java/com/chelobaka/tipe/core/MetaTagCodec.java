@@ -0,0 +1,166 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.Map;
+
+/**
+ * Conversions between document markup and segment text.
+ */
+public final class MetaTagCodec {
+
+    private static final String HREF_PREFIX = "href=\"";
+
+    // Markdown link target follows link text
+    private static final String LINK_TARGET_PREFIX = "](";
+
+    private static final String[][] SPECIAL_HTML_CHARACTERS = {
+        {"&amp;", "&"},
+        {"&nbsp;", "\u00A0"},
+        {"&quot;", "\""}
+    };
+
+    /**
+     * Substitute special HTML characters with real ones.
+     * @param text document text
+     * @return segment text
+     */
+    public static String decodeEntities(final String text) {
+        String result = text;
+        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
+            result = result.replaceAll(subst[0], subst[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Put back special HTML characters.
+     * @param text segment text
+     * @return document text
+     */
+    public static String encodeEntities(final String text) {
+        String result = text;
+        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
+            result = result.replaceAll(subst[1], subst[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Replace meta tags with HTML tags in one pass.
+     * Text is taken literally, so tag bodies may contain any characters.
+     * @param translation translation with meta tags
+     * @param metaBodies meta tag to HTML tag map
+     * @return translation with HTML tags
+     */
+    public static String restoreMetaTags(final String translation,
+                                         final Map<String, String> metaBodies) {
+        if (metaBodies.isEmpty()) {
+            return translation;
+        }
+        StringBuilder builder = new StringBuilder(translation.length() * 2);
+        int copied = 0;
+        int lt = translation.indexOf('<');
+        while (lt >= 0) {
+            int gt = translation.indexOf('>', lt);
+            if (gt < 0) {
+                break;
+            }
+            // Tag candidate may contain another '<', retry from it
+            int nextLt = translation.lastIndexOf('<', gt);
+            if (nextLt > lt) {
+                lt = nextLt;
+                continue;
+            }
+            String html = metaBodies.get(translation.substring(lt, gt + 1));
+            if (html != null) {
+                builder.append(translation, copied, lt);
+                builder.append(html);
+                copied = gt + 1;
+            }
+            lt = translation.indexOf('<', gt + 1);
+        }
+        builder.append(translation, copied, translation.length());
+        return builder.toString();
+    }
+
+    /**
+     * Replace href attribute values and markdown link targets in one pass each.
+     * @param html HTML string
+     * @param hrefs original to translated href map
+     * @return HTML string with translated hrefs
+     */
+    public static String replaceHrefs(final String html, final Map<String, String> hrefs) {
+        return replaceHrefs(html, hrefs, true);
+    }
+
+    /**
+     * Replace href attribute values, and markdown link targets if markdown
+     * is recognized, in one pass each.
+     * @param html HTML string
+     * @param hrefs original to translated href map
+     * @param markdown replace markdown link targets too
+     * @return HTML string with translated hrefs
+     */
+    public static String replaceHrefs(final String html, final Map<String, String> hrefs,
+                                      final boolean markdown) {
+        if (hrefs.isEmpty()) {
+            return html;
+        }
+        String result = replaceValues(html, HREF_PREFIX, '"', hrefs);
+        if (!markdown) {
+            return result;
+        }
+        return replaceValues(result, LINK_TARGET_PREFIX, ')', hrefs);
+    }
+
+    private static String replaceValues(final String html, final String prefix,
+                                        final char terminator, final Map<String, String> values) {
+        int attr = html.indexOf(prefix);
+        if (attr < 0) {
+            return html;
+        }
+        StringBuilder builder = new StringBuilder(html.length());
+        int copied = 0;
+        while (attr >= 0) {
+            int valueStart = attr + prefix.length();
+            // Value has at least one character, which may be a terminator itself
+            int end = html.indexOf(terminator, valueStart + 1);
+            if (end < 0) {
+                break;
+            }
+            String translated = values.get(html.substring(valueStart, end));
+            if (translated != null) {
+                builder.append(html, copied, valueStart);
+                builder.append(translated);
+                copied = end;
+            }
+            attr = html.indexOf(prefix, valueStart);
+        }
+        builder.append(html, copied, html.length());
+        return builder.toString();
+    }
+
+    private MetaTagCodec() {
+        // Disable instance creation.
+    }
+}
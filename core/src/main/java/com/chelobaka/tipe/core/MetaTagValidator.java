@@ -0,0 +1,240 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that a translation keeps meta tags of its source. Reports tags
+ * missing from the translation, tags not present in the source, pair tags
+ * closed out of order and hrefs that would break the anchor tag.
+ * Methods are stateless and safe to call from many threads.
+ */
+public final class MetaTagValidator {
+
+    /**
+     * Problem kind.
+     */
+    public enum ProblemType {
+        /** Source meta tag is missing from translation. */
+        MISSING,
+        /** Translation has meta tag not present in source. */
+        EXTRA,
+        /** Pair tag is closed before it is opened or crosses another pair. */
+        CROSSED,
+        /** Translated href is empty or contains characters ending the attribute. */
+        BROKEN_HREF
+    }
+
+    /**
+     * Problem found in translation.
+     */
+    public static final class Problem {
+        private final ProblemType type;
+        private final String tag;
+
+        Problem(final ProblemType type, final String tag) {
+            this.type = type;
+            this.tag = tag;
+        }
+
+        /**
+         * Get problem kind.
+         * @return problem kind
+         */
+        public ProblemType getType() {
+            return type;
+        }
+
+        /**
+         * Get meta tag or href the problem is about.
+         * @return meta tag or href
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Problem)) {
+                return false;
+            }
+            Problem that = (Problem) o;
+            return type == that.type && tag.equals(that.tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return type.hashCode() * 31 + tag.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + tag;
+        }
+    }
+
+    /**
+     * Check meta tags of a segment translation.
+     * @param source segment source
+     * @param translation segment translation
+     * @return problems in order of appearance, empty list if translation is fine
+     */
+    public static List<Problem> validate(final String source, final String translation) {
+        List<String> sourceTags = findMetaTags(source);
+        List<String> translationTags = findMetaTags(translation);
+        if (sourceTags.equals(translationTags)) {
+            // Source order is always properly nested
+            return Collections.emptyList();
+        }
+
+        List<Problem> problems = new ArrayList<>();
+        Map<String, Integer> balance = new HashMap<>();
+        for (String tag : sourceTags) {
+            balance.merge(tag, 1, Integer::sum);
+        }
+        for (String tag : translationTags) {
+            balance.merge(tag, -1, Integer::sum);
+        }
+        for (String tag : sourceTags) {
+            if (balance.get(tag) > 0) {
+                problems.add(new Problem(ProblemType.MISSING, tag));
+                balance.put(tag, 0);
+            }
+        }
+        for (String tag : translationTags) {
+            if (balance.get(tag) < 0) {
+                problems.add(new Problem(ProblemType.EXTRA, tag));
+                balance.put(tag, 0);
+            }
+        }
+
+        // Only pairs kept by translation have to nest, missing halves are reported above
+        Set<String> sourceSet = new HashSet<>(sourceTags);
+        sourceSet.retainAll(translationTags);
+        Deque<String> open = new ArrayDeque<>();
+        Set<String> reported = new HashSet<>();
+        for (String tag : translationTags) {
+            if (tag.endsWith("/>")) {
+                continue;
+            }
+            if (tag.charAt(1) != '/') {
+                if (sourceSet.contains("</" + tag.substring(1)) && !reported.contains(tag)) {
+                    open.push(tag);
+                }
+                continue;
+            }
+            String opening = "<" + tag.substring(2);
+            if (!sourceSet.contains(opening)) {
+                continue;
+            }
+            if (opening.equals(open.peek())) {
+                open.pop();
+            } else {
+                problems.add(new Problem(ProblemType.CROSSED, tag));
+                // Pair is reported once, its other half does not affect nesting
+                reported.add(opening);
+                open.remove(opening);
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Check translated href of an anchor tag.
+     * @param href translated href
+     * @return problems, empty list if href is fine
+     */
+    public static List<Problem> validateHref(final String href) {
+        if (href.isEmpty()) {
+            return Collections.singletonList(new Problem(ProblemType.BROKEN_HREF, href));
+        }
+        for (int i = 0; i < href.length(); i++) {
+            char c = href.charAt(i);
+            if (c == '"' || c == '<' || c == '>' || Character.isWhitespace(c)) {
+                return Collections.singletonList(new Problem(ProblemType.BROKEN_HREF, href));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Find meta tags: {@code <xN>}, {@code </xN>} and {@code <xN/>}.
+     * @param text segment text
+     * @return meta tags in order of appearance
+     */
+    static List<String> findMetaTags(final String text) {
+        List<String> result = new ArrayList<>();
+        int lt = text.indexOf('<');
+        while (lt >= 0) {
+            int end = metaTagEnd(text, lt);
+            if (end > 0) {
+                result.add(text.substring(lt, end));
+                lt = text.indexOf('<', end);
+            } else {
+                lt = text.indexOf('<', lt + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get end of meta tag starting at given position.
+     * @return index after '>' or -1 if there is no meta tag
+     */
+    private static int metaTagEnd(final String text, final int start) {
+        int i = start + 1;
+        boolean closing = i < text.length() && text.charAt(i) == '/';
+        if (closing) {
+            i++;
+        }
+        if (i >= text.length() || !Character.isLetter(text.charAt(i))) {
+            return -1;
+        }
+        i++;
+        int digits = i;
+        while (i < text.length() && Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i == digits || i >= text.length()) {
+            return -1;
+        }
+        if (!closing && text.charAt(i) == '/') {
+            i++;
+        }
+        if (i >= text.length() || text.charAt(i) != '>') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    private MetaTagValidator() {
+    }
+}
@@ -0,0 +1,330 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translatable group of blocks prepared for OmegaT.
+ */
+public final class Segment {
+
+    private final int groupStart;
+    private final int scopeStart;
+    private final int scopeEnd;
+    private final int groupEnd;
+    private final int blockCount;
+    private final String source;
+    private final String comment;
+    private final Map<String, String> hrefs;
+
+    // Placeholder meta tags of merged segments with the text they stand for
+    private final Map<String, String> placeholders;
+
+    // HTML tags are only needed to build output, so they are looked up lazily
+    private final TokenizedDocument document;
+    private final List<HTMLTag> tags;
+    private Map<String, String> metaBodies;
+
+    private Segment(final int groupStart, final int scopeStart, final int scopeEnd,
+                    final int groupEnd, final int blockCount, final String source,
+                    final String comment, final Map<String, String> hrefs,
+                    final Map<String, String> placeholders,
+                    final TokenizedDocument document, final List<HTMLTag> tags) {
+        this.groupStart = groupStart;
+        this.scopeStart = scopeStart;
+        this.scopeEnd = scopeEnd;
+        this.groupEnd = groupEnd;
+        this.blockCount = blockCount;
+        this.source = source;
+        this.comment = comment;
+        this.hrefs = hrefs;
+        this.placeholders = placeholders;
+        this.document = document;
+        this.tags = tags;
+    }
+
+    /**
+     * Build segment from group of blocks.
+     * @param document document of the blocks
+     * @param blocks : List of blocks where at least one is payload
+     * @return segment
+     */
+    public static Segment of(final TokenizedDocument document, final List<Block> blocks) {
+
+        // Store initial bounds
+        int groupStart = blocks.get(0).getStart();
+        int groupEnd = blocks.get(blocks.size() - 1).getEnd();
+
+        // Strip margin tags
+        int left = 0;
+        int right = blocks.size() - 1;
+        while (right - left > 1) {
+            Block leftBlock = blocks.get(left);
+            Block rightBlock = blocks.get(right);
+            if (leftBlock.getType() != BlockType.TAG || rightBlock.getType() != BlockType.TAG) {
+                break;
+            }
+            if (((HTMLTag) leftBlock).getPair() != rightBlock) {
+                break;
+            }
+            // Do not strip <a> tags since they contain href used in comment
+            if (((HTMLTag) leftBlock).getName().equals("a")) {
+                break;
+            }
+
+            left++;
+            right--;
+        }
+
+        int scopeStart = blocks.get(left).getStart();
+        int scopeEnd = blocks.get(right).getEnd();
+
+        List<HTMLTag> scopeTags = new ArrayList<>();
+        StringBuilder commentBuilder = new StringBuilder();
+        Map<String, String> anchorTagHrefs = new LinkedHashMap<>();
+
+        // Build string for translation
+        StringBuilder translationBuilder = new StringBuilder();
+        for (Block block : blocks.subList(left, right + 1)) {
+            switch (block.getType()) {
+                case TAG:
+                    HTMLTag tag = (HTMLTag) block;
+                    String metaBody = tag.getMetaBody();
+                    translationBuilder.append(metaBody);
+                    scopeTags.add(tag);
+                    String href = document.getHref(tag);
+                    if (href != null) {
+                        // Append tag name and its href to comment
+                        commentBuilder.append(metaBody);
+                        commentBuilder.append(": ");
+                        commentBuilder.append(href);
+                        commentBuilder.append("\n");
+                        // Store tag name / href pair for translation
+                        anchorTagHrefs.put(metaBody, href);
+                    }
+                    break;
+                case PAYLOAD:
+                    translationBuilder.append(document.substring(block.getStart(), block.getEnd()));
+                    break;
+                default:
+                    // Should not happen
+            }
+        }
+
+        String translation = translationBuilder.toString();
+
+        // Substitute special HTML characters with real ones
+        translation = MetaTagCodec.decodeEntities(translation);
+
+        // Check if we have any comments
+        String comment;
+        if (commentBuilder.length() > 0) {
+            comment = commentBuilder.toString();
+        } else {
+            comment = null;
+        }
+
+        return new Segment(groupStart, scopeStart, scopeEnd, groupEnd, blocks.size(),
+                translation, comment, anchorTagHrefs, Collections.emptyMap(), document,
+                scopeTags);
+    }
+
+    /**
+     * Merge neighbour segments of a document into one. Text between the
+     * segments, including their stripped margin tags, is replaced by
+     * placeholder meta tags {@code <bN/>}; numbers of meta tags found in
+     * the segments are skipped.
+     * @param document document of the segments
+     * @param parts segments in document order
+     * @param separators text written between each two segments
+     * @return merged segment
+     */
+    static Segment merge(final TokenizedDocument document, final List<Segment> parts,
+                         final List<String> separators) {
+        Set<String> used = new HashSet<>();
+        for (Segment part : parts) {
+            used.addAll(MetaTagValidator.findMetaTags(part.source));
+        }
+
+        StringBuilder source = new StringBuilder();
+        StringBuilder comment = new StringBuilder();
+        Map<String, String> hrefs = new LinkedHashMap<>();
+        Map<String, String> placeholders = new HashMap<>();
+        List<HTMLTag> tags = new ArrayList<>();
+        int blockCount = 0;
+        int number = 0;
+        int index = 0;
+        Segment previous = null;
+        for (Segment part : parts) {
+            if (previous != null) {
+                String placeholder;
+                do {
+                    number++;
+                    placeholder = "<b" + number + "/>";
+                } while (used.contains(placeholder) || used.contains("<b" + number + ">"));
+                source.append(placeholder);
+                placeholders.put(placeholder, document.substring(previous.scopeEnd,
+                        previous.groupEnd) + separators.get(index++)
+                        + document.substring(part.groupStart, part.scopeStart));
+            }
+            source.append(part.source);
+            if (part.comment != null) {
+                comment.append(part.comment);
+            }
+            hrefs.putAll(part.hrefs);
+            tags.addAll(part.tags);
+            blockCount += part.blockCount;
+            previous = part;
+        }
+
+        Segment first = parts.get(0);
+        String mergedComment = null;
+        if (comment.length() > 0) {
+            mergedComment = comment.toString();
+        }
+        return new Segment(first.groupStart, first.scopeStart, previous.scopeEnd,
+                previous.groupEnd, blockCount, source.toString(), mergedComment, hrefs,
+                placeholders, document, tags);
+    }
+
+    public int getGroupStart() {
+        return groupStart;
+    }
+
+    public int getScopeStart() {
+        return scopeStart;
+    }
+
+    public int getScopeEnd() {
+        return scopeEnd;
+    }
+
+    public int getGroupEnd() {
+        return groupEnd;
+    }
+
+    /**
+     * Get number of blocks in the segment including stripped margin tags.
+     * @return block count
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Get text sent to OmegaT with meta tags in place of formatting tags.
+     * @return segment source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * Get HTML tags of the segment.
+     * @return meta tag to HTML tag map
+     */
+    public Map<String, String> getMetaBodies() {
+        if (metaBodies == null) {
+            metaBodies = new HashMap<>();
+            for (HTMLTag tag : tags) {
+                metaBodies.put(tag.getMetaBody(), document.getHtml(tag.getMetaBody()));
+            }
+        }
+        return metaBodies;
+    }
+
+    /**
+     * Get placeholder meta tags of a merged segment.
+     * @return placeholder to original text map, empty for other segments
+     */
+    public Map<String, String> getPlaceholders() {
+        return Collections.unmodifiableMap(placeholders);
+    }
+
+    /**
+     * Get number of formatting tags in the segment.
+     * @return tag count
+     */
+    public int getTagCount() {
+        return tags.size();
+    }
+
+    /**
+     * Get hrefs of anchor tags in order of appearance.
+     * @return meta tag to href map
+     */
+    public Map<String, String> getHrefs() {
+        return hrefs;
+    }
+
+    /**
+     * Build output of translated segment.
+     * @param translatedText translation with meta tags
+     * @param translatedHrefs original to translated href map
+     * @return output string
+     */
+    public String restore(final String translatedText,
+                          final Map<String, String> translatedHrefs) {
+        // Put back special HTML characters
+        String translation = MetaTagCodec.encodeEntities(translatedText);
+
+        // Put HTML tags back
+        translation = MetaTagCodec.restoreMetaTags(translation, getMetaBodies());
+
+        // Replace hrefs with translated ones
+        translation = MetaTagCodec.replaceHrefs(translation, translatedHrefs,
+                document.getTagSet().isMarkdown());
+
+        // Put text between merged segments back, its hrefs are not translated
+        translation = MetaTagCodec.restoreMetaTags(translation, placeholders);
+
+        // Build result string
+        StringBuilder resultBuilder = new StringBuilder();
+
+        // Write left stripped tags
+        if (groupStart < scopeStart) {
+            resultBuilder.append(document.substring(groupStart, scopeStart));
+        }
+
+        // Append translation to result
+        resultBuilder.append(translation);
+
+        // Write right stripped tags
+        if (groupEnd > scopeEnd) {
+            resultBuilder.append(document.substring(scopeEnd, groupEnd));
+        }
+
+        return resultBuilder.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.List;
+
+/**
+ * Pairs segments of source and translated documents by their structural
+ * signatures. Documents are walked side by side; when signatures differ,
+ * the nearest position where they match again is searched within a small
+ * window, so a few added or removed segments do not break the rest.
+ */
+public final class SegmentAligner {
+
+    /** How far to look for matching signatures after a mismatch. */
+    public static final int WINDOW = 8;
+
+    /**
+     * Receiver of aligned segment pairs.
+     */
+    public interface PairConsumer {
+        /**
+         * Accept aligned pair.
+         * @param source source segment index
+         * @param target translated segment index
+         */
+        void accept(int source, int target);
+    }
+
+    /**
+     * Align two signature sequences.
+     * @param source source signatures
+     * @param target translated signatures
+     * @param consumer receives aligned pairs in document order
+     */
+    public static void align(final List<String> source, final List<String> target,
+                      final PairConsumer consumer) {
+        int i = 0;
+        int j = 0;
+        while (i < source.size() && j < target.size()) {
+            if (source.get(i).equals(target.get(j))) {
+                consumer.accept(i++, j++);
+                continue;
+            }
+            // Prefer the resync point followed by the longest run of matches
+            int skip = 0;
+            int bestRun = 0;
+            for (int distance = 1; distance <= WINDOW; distance++) {
+                int run = matchRun(source, target, i + distance, j);
+                if (run > bestRun) {
+                    bestRun = run;
+                    skip = distance;
+                }
+                run = matchRun(source, target, i, j + distance);
+                if (run > bestRun) {
+                    bestRun = run;
+                    skip = -distance;
+                }
+            }
+            if (skip > 0) {
+                // Segments missing in translation
+                i += skip;
+            } else if (skip < 0) {
+                // Segments added in translation
+                j -= skip;
+            } else {
+                // Changed structure, leave both segments unaligned
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Count matching signatures starting from given positions.
+     * @param source source signatures
+     * @param target translated signatures
+     * @param i source position
+     * @param j target position
+     * @return number of matches up to {@link #WINDOW}
+     */
+    private static int matchRun(final List<String> source, final List<String> target,
+                                final int i, final int j) {
+        int run = 0;
+        while (run < WINDOW && i + run < source.size() && j + run < target.size()
+                && source.get(i + run).equals(target.get(j + run))) {
+            run++;
+        }
+        return run;
+    }
+
+    private SegmentAligner() {
+        // Disable instance creation.
+    }
+}
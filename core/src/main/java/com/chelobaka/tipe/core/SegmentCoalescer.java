@@ -0,0 +1,260 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges runs of short table cells and list items into one segment.
+ *
+ * Segments of up to {@link #MAX_WORDS} words separated only by cell tags
+ * ({@code td}, {@code th}, {@code li}) and whitespace are merged; the text
+ * between them becomes a placeholder meta tag of the merged segment. Any
+ * other block tag, such as {@code tr} or {@code ul}, ends the run, so runs
+ * stay within one row or list.
+ */
+final class SegmentCoalescer {
+
+    /** Largest word count of a segment that is merged with its neighbours. */
+    static final int MAX_WORDS = 3;
+
+    // Private use character, never a part of a real href
+    private static final char HREF_MARK = '\uE000';
+
+    private static final Set<String> CELL_TAGS = new HashSet<>(Arrays.asList("td", "th", "li"));
+
+    /**
+     * Receiver of segments and text between them.
+     */
+    interface Output {
+        /**
+         * Accept segment.
+         * @param segment segment
+         * @param firstBlock index of the first segment block
+         * @throws IOException on failure
+         */
+        void segment(Segment segment, int firstBlock) throws IOException;
+
+        /**
+         * Accept text outside of segments.
+         * @param text text
+         * @throws IOException on failure
+         */
+        void text(String text) throws IOException;
+    }
+
+    private final TokenizedDocument document;
+    private final Output output;
+
+    // Current run of short segments with texts between them
+    private final List<Segment> run = new ArrayList<>();
+    private final List<String> separators = new ArrayList<>();
+    private final List<Integer> firstBlocks = new ArrayList<>();
+
+    // Atomics after the last segment of the run
+    private final StringBuilder separator = new StringBuilder();
+    private boolean separatorHasCell;
+
+    private SegmentCoalescer(final TokenizedDocument document, final Output output) {
+        this.document = document;
+        this.output = output;
+    }
+
+    /**
+     * Walk document blocks merging short segments.
+     * @param document document
+     * @param output receiver
+     * @throws IOException on output failure
+     */
+    static void walk(final TokenizedDocument document, final Output output) throws IOException {
+        SegmentCoalescer coalescer = new SegmentCoalescer(document, output);
+        List<Block> blocks = document.getBlocks();
+        List<Block> cache = new ArrayList<>();
+        boolean payloadInCache = false;
+
+        for (int k = 0; k < blocks.size(); k++) {
+            Block block = blocks.get(k);
+            switch (block.getType()) {
+                case ATOMIC: // The last one is dummy atomic
+                    if (payloadInCache) {
+                        coalescer.segment(Segment.of(document, cache), k - cache.size());
+                    } else if (!cache.isEmpty()) {
+                        coalescer.flush();
+                        output.text(document.substring(cache.get(0).getStart(),
+                                cache.get(cache.size() - 1).getEnd()));
+                    }
+                    payloadInCache = false;
+                    cache.clear();
+                    coalescer.atomic(block);
+                    break;
+                case PAYLOAD:
+                    payloadInCache = true; // No break here
+                case TAG:
+                    cache.add(block);
+                default:
+            }
+        }
+        coalescer.flush();
+    }
+
+    private void segment(final Segment segment, final int firstBlock) throws IOException {
+        if (!isShort(segment) || hasLiteralMetaTags(segment)) {
+            flush();
+            output.segment(segment, firstBlock);
+            return;
+        }
+        if (!run.isEmpty() && !separatorHasCell) {
+            flush();
+        }
+        if (!run.isEmpty()) {
+            separators.add(separator.toString());
+        }
+        run.add(segment);
+        firstBlocks.add(firstBlock);
+        separator.setLength(0);
+        separatorHasCell = false;
+    }
+
+    private void atomic(final Block block) throws IOException {
+        String text = document.substring(block.getStart(), block.getEnd());
+        if (!run.isEmpty()) {
+            boolean cell = block instanceof BlockTag
+                    && CELL_TAGS.contains(((BlockTag) block).getName());
+            if (cell || isBlank(text)) {
+                separatorHasCell |= cell;
+                separator.append(text);
+                return;
+            }
+            flush();
+        }
+        output.text(text);
+    }
+
+    /**
+     * Emit current run and the separator after it.
+     */
+    private void flush() throws IOException {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (run.size() == 1) {
+            output.segment(run.get(0), firstBlocks.get(0));
+        } else if (hrefsStayLocal()) {
+            output.segment(Segment.merge(document, run, separators), firstBlocks.get(0));
+        } else {
+            for (int i = 0; i < run.size(); i++) {
+                if (i > 0) {
+                    output.text(separators.get(i - 1));
+                }
+                output.segment(run.get(i), firstBlocks.get(i));
+            }
+        }
+        if (separator.length() > 0) {
+            output.text(separator.toString());
+        }
+        run.clear();
+        separators.clear();
+        firstBlocks.clear();
+        separator.setLength(0);
+        separatorHasCell = false;
+    }
+
+    /**
+     * Check that hrefs of the run would not be replaced in other segments
+     * of the run when the merged segment is restored.
+     */
+    private boolean hrefsStayLocal() {
+        Map<String, String> hrefs = new HashMap<>();
+        for (Segment part : run) {
+            hrefs.putAll(marked(part.getHrefs()));
+        }
+        if (hrefs.isEmpty()) {
+            return true;
+        }
+        for (Segment part : run) {
+            String html = part.restore(part.getSource(), Collections.emptyMap());
+            boolean markdown = document.getTagSet().isMarkdown();
+            if (!MetaTagCodec.replaceHrefs(html, hrefs, markdown).equals(
+                    MetaTagCodec.replaceHrefs(html, marked(part.getHrefs()), markdown))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map hrefs to values which show where they were replaced.
+     */
+    private static Map<String, String> marked(final Map<String, String> hrefs) {
+        Map<String, String> result = new HashMap<>();
+        for (String href : hrefs.values()) {
+            result.put(href, HREF_MARK + href);
+        }
+        return result;
+    }
+
+    private static boolean isShort(final Segment segment) {
+        String source = segment.getSource();
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < source.length(); i++) {
+            boolean space = Character.isWhitespace(source.charAt(i));
+            if (!space && !inWord) {
+                words++;
+                if (words > MAX_WORDS) {
+                    return false;
+                }
+            }
+            inWord = !space;
+        }
+        return true;
+    }
+
+    /**
+     * Check if segment text contains something looking like a meta tag.
+     * Its meaning would change next to tags of other merged segments.
+     */
+    private static boolean hasLiteralMetaTags(final Segment segment) {
+        return MetaTagValidator.findMetaTags(segment.getSource()).size() != segment.getTagCount();
+    }
+
+    /**
+     * Check if text is empty or whitespace, like the dummy atomic at the
+     * end of the document and newlines between cells.
+     */
+    private static boolean isBlank(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!MarkupScanner.isSpace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable list of tag names compiled for matching at a text position.
+ * Names are bucketed by first character, so a match attempt checks only
+ * names that can possibly match. Within a bucket names keep list order,
+ * the first matching name wins like in a regex alternation.
+ */
+public final class TagNames {
+
+    private static final int BUCKETS = 128;
+    private static final String[] NO_NAMES = new String[0];
+
+    private final String[] names;
+    private final String[][] buckets;
+    private final String[] otherNames; // names starting with non-ASCII characters
+
+    TagNames(final List<String> names) {
+        this.names = names.toArray(new String[0]);
+        buckets = new String[BUCKETS][];
+        List<String> other = new ArrayList<>();
+        for (int c = 0; c < BUCKETS; c++) {
+            List<String> bucket = new ArrayList<>();
+            for (String name : names) {
+                if (name.charAt(0) == c) {
+                    bucket.add(name);
+                }
+            }
+            if (bucket.isEmpty()) {
+                buckets[c] = NO_NAMES;
+            } else {
+                buckets[c] = bucket.toArray(new String[0]);
+            }
+        }
+        for (String name : names) {
+            if (name.charAt(0) >= BUCKETS) {
+                other.add(name);
+            }
+        }
+        otherNames = other.toArray(new String[0]);
+    }
+
+    private String[] candidates(final char c) {
+        if (c < BUCKETS) {
+            return buckets[c];
+        }
+        return otherNames;
+    }
+
+    /**
+     * Find first name which text contains at given position.
+     * @param text text
+     * @param position position
+     * @return matching name or null
+     */
+    String match(final CharSequence text, final int position) {
+        if (position >= text.length()) {
+            return null;
+        }
+        for (String name : candidates(text.charAt(position))) {
+            if (matchesAt(name, text, position)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find first name which text contains at given position followed by
+     * given character.
+     * @param text text
+     * @param position position
+     * @param terminator character expected right after name
+     * @return matching name or null
+     */
+    String match(final CharSequence text, final int position, final char terminator) {
+        if (position >= text.length()) {
+            return null;
+        }
+        for (String name : candidates(text.charAt(position))) {
+            int after = position + name.length();
+            if (after < text.length() && text.charAt(after) == terminator
+                    && matchesAt(name, text, position)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesAt(final String name, final CharSequence text,
+                                     final int position) {
+        if (position + name.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(position + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<String> asList() {
+        return Arrays.asList(names.clone());
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+}
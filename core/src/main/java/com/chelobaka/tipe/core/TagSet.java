@@ -0,0 +1,215 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable configuration of recognized tags.
+ * Each distinct configuration is compiled once and shared by all users.
+ */
+public final class TagSet {
+
+    /** Option key of formatting tag names. */
+    public static final String OPTION_FORMATTING_TAGS = "formattingTags";
+
+    /** Option key of block tag names. */
+    public static final String OPTION_BLOCK_TAGS = "blockTags";
+
+    /** Option key of tag names highlighted in editor. */
+    public static final String OPTION_MARKER_TAGS = "markerTags";
+
+    /** Option key of markdown emphasis, link and heading recognition, "true" or "false". */
+    public static final String OPTION_MARKDOWN = "markdown";
+
+    /** Option key of merging short table cells and list items, "true" or "false". */
+    public static final String OPTION_COALESCE = "coalesce";
+
+    // Text formatting HTML tags
+    private static final List<String> DEFAULT_FORMATTING_TAGS = Arrays.asList(
+        "strong",
+        "em",
+        "a",
+        "strike",
+        "sub",
+        "sup",
+        "span"
+    );
+
+    // Block level HTML tags
+    private static final List<String> DEFAULT_BLOCK_TAGS = Arrays.asList(
+        "div",
+        "iframe",
+        "ul",
+        "ol",
+        "li",
+        "p",
+        "blockquote",
+        "table",
+        "tbody",
+        "tr",
+        "td",
+        "th"
+    );
+
+    // Tags highlighted in editor and offered in popup menu
+    private static final List<String> DEFAULT_MARKER_TAGS = Arrays.asList(
+        "strong",
+        "em",
+        "sup",
+        "sub"
+    );
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z][A-Za-z0-9-]*");
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile("[\\s,]+");
+
+    private static final Map<String, TagSet> CACHE = new ConcurrentHashMap<>();
+
+    /** Default tag set. */
+    public static final TagSet DEFAULT = new TagSet(DEFAULT_FORMATTING_TAGS,
+            DEFAULT_BLOCK_TAGS, DEFAULT_MARKER_TAGS, false, false);
+
+    private final TagNames formattingTags;
+    private final TagNames blockTags;
+    private final List<String> markerTags;
+    private final Pattern markerPattern;
+    private final boolean markdown;
+    private final boolean coalesce;
+
+    private TagSet(final List<String> formatting, final List<String> block,
+                   final List<String> marker, final boolean markdown, final boolean coalesce) {
+        this.markdown = markdown;
+        this.coalesce = coalesce;
+        formattingTags = new TagNames(formatting);
+        blockTags = new TagNames(block);
+        markerTags = Collections.unmodifiableList(new ArrayList<>(marker));
+        if (marker.isEmpty()) {
+            markerPattern = null;
+        } else {
+            markerPattern = Pattern.compile("</?(" + String.join("|", marker) + ")>");
+        }
+    }
+
+    /**
+     * Get tag set for filter options.
+     * @param options filter options, may be null
+     * @return shared tag set
+     */
+    public static TagSet forOptions(final Map<String, String> options) {
+        if (options == null) {
+            return DEFAULT;
+        }
+        String formatting = options.get(OPTION_FORMATTING_TAGS);
+        String block = options.get(OPTION_BLOCK_TAGS);
+        String marker = options.get(OPTION_MARKER_TAGS);
+        boolean markdown = Boolean.parseBoolean(options.get(OPTION_MARKDOWN));
+        boolean coalesce = Boolean.parseBoolean(options.get(OPTION_COALESCE));
+        if (formatting == null && block == null && marker == null && !markdown && !coalesce) {
+            return DEFAULT;
+        }
+        List<String> formattingList = parseNames(formatting, DEFAULT_FORMATTING_TAGS);
+        List<String> blockList = parseNames(block, DEFAULT_BLOCK_TAGS);
+        List<String> markerList = parseNames(marker, DEFAULT_MARKER_TAGS);
+        String key = String.join(",", formattingList) + "|" + String.join(",", blockList)
+                + "|" + String.join(",", markerList) + "|" + markdown + "|" + coalesce;
+        return CACHE.computeIfAbsent(key,
+                k -> new TagSet(formattingList, blockList, markerList, markdown, coalesce));
+    }
+
+    /**
+     * Parse tag name list. Invalid names are skipped.
+     * @param value option value
+     * @param defaults defaults for missing or blank value
+     * @return tag names
+     */
+    private static List<String> parseNames(final String value, final List<String> defaults) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaults;
+        }
+        List<String> result = new ArrayList<>();
+        for (String name : SEPARATOR_PATTERN.split(value.trim())) {
+            if (NAME_PATTERN.matcher(name).matches() && !result.contains(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    public static String defaultOptionValue(final String option) {
+        switch (option) {
+            case OPTION_FORMATTING_TAGS:
+                return String.join(", ", DEFAULT_FORMATTING_TAGS);
+            case OPTION_BLOCK_TAGS:
+                return String.join(", ", DEFAULT_BLOCK_TAGS);
+            case OPTION_MARKER_TAGS:
+                return String.join(", ", DEFAULT_MARKER_TAGS);
+            case OPTION_MARKDOWN:
+            case OPTION_COALESCE:
+                return Boolean.FALSE.toString();
+            default:
+                return "";
+        }
+    }
+
+    public TagNames getFormattingTags() {
+        return formattingTags;
+    }
+
+    public TagNames getBlockTags() {
+        return blockTags;
+    }
+
+    public List<String> getMarkerTags() {
+        return markerTags;
+    }
+
+    /**
+     * Check if markdown emphasis, links and headings are recognized.
+     * @return check result
+     */
+    public boolean isMarkdown() {
+        return markdown;
+    }
+
+    /**
+     * Check if runs of short table cells and list items are merged into
+     * one segment, see {@link SegmentCoalescer}.
+     * @return check result
+     */
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    /**
+     * Get pattern matching opening and closing marker tags.
+     * @return pattern with tag name in group 1 or null if no marker tags
+     */
+    public Pattern getMarkerPattern() {
+        return markerPattern;
+    }
+}
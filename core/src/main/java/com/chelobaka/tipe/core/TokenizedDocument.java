@@ -0,0 +1,621 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Document split to atomic, tag and payload blocks with meta names
+ * generated for formatting tags. Immutable once created, so it can be
+ * cached and shared between filter instances.
+ *
+ * <p>Text is stored once in UTF-8, which takes half the memory of a
+ * {@code String} for markup mixed with non-Latin text. Block bounds and
+ * hrefs are offsets into it and become strings only when requested.
+ */
+public final class TokenizedDocument {
+
+    // UTF-8 encoded lengths of characters
+    private static final int UTF8_ONE_BYTE_LIMIT = 0x80;
+    private static final int UTF8_TWO_BYTES_LIMIT = 0x800;
+    private static final int UTF8_BMP_BYTES = 3;
+    private static final int UTF8_SUPPLEMENTARY_BYTES = 4;
+
+    // UTF-8 byte kinds
+    private static final int UTF8_CONTINUATION_MASK = 0xC0;
+    private static final int UTF8_CONTINUATION = 0x80;
+    private static final int UTF8_SUPPLEMENTARY_LEAD = 0xF0;
+
+    private final TagSet tagSet;
+
+    // Document text. It is only kept if it can not be stored in UTF-8.
+    private String text;
+    private byte[] bytes;
+
+    // Scanner is only needed during tokenization
+    private MarkupScanner scanner;
+
+    // Final document blocks
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<Block> blockView = Collections.unmodifiableList(blocks);
+
+    // Structures for tag manipulations
+    private final Map<String, HTMLTag> metaToTagMap = new HashMap<>();
+    private final Map<String, String> htmlToMetaMap;
+    private final Map<Character, Integer> metaCounters;
+
+    private int tagCount;
+    private boolean wellFormed;
+
+    // Element tree, built on first request
+    private volatile DocumentTree tree;
+
+    // Whether untranslated segments render back to their text, checked on first request
+    private volatile Boolean identityExact;
+
+    /**
+     * Meta naming state carried between consecutive chunks of one document,
+     * so chunks receive the same meta tags as the whole document would.
+     */
+    static final class ChunkState {
+        private final Map<String, String> htmlToMetaMap = new HashMap<>();
+        private final Map<Character, Integer> metaCounters = new HashMap<>();
+        private int formattingDepth;
+        // Spaces on the last line of previous chunks, chunks are cut after them
+        private int lineIndent;
+    }
+
+    private TokenizedDocument(final String text, final TagSet tagSet,
+                              final Map<String, String> htmlToMetaMap,
+                              final Map<Character, Integer> metaCounters) {
+        this.text = text;
+        this.tagSet = tagSet;
+        this.htmlToMetaMap = htmlToMetaMap;
+        this.metaCounters = metaCounters;
+        scanner = new MarkupScanner(text);
+    }
+
+    /**
+     * Tokenize document.
+     * @param text document text
+     * @param tagSet recognized tags
+     * @return tokenized document
+     */
+    public static TokenizedDocument tokenize(final String text, final TagSet tagSet) {
+        TokenizedDocument document = new TokenizedDocument(text, tagSet,
+                new HashMap<>(), new HashMap<>());
+        document.tokenize(0, 0);
+
+        // Only meta to HTML mapping is needed after tokenization
+        document.htmlToMetaMap.clear();
+        document.metaCounters.clear();
+        document.compact();
+        return document;
+    }
+
+    /**
+     * Tokenize part of a document. The chunk must start at the document
+     * start or at a cut returned by {@link #closedPrefix}.
+     * @param text chunk text
+     * @param tagSet recognized tags
+     * @param state state left by previous chunks
+     * @return tokenized chunk with offsets in chars of the chunk
+     */
+    static TokenizedDocument tokenizeChunk(final String text, final TagSet tagSet,
+                                           final ChunkState state) {
+        TokenizedDocument document = new TokenizedDocument(text, tagSet,
+                state.htmlToMetaMap, state.metaCounters);
+        state.formattingDepth = document.tokenize(state.formattingDepth, state.lineIndent);
+        state.lineIndent = lastLineIndent(text, state.lineIndent);
+        return document;
+    }
+
+    /**
+     * Count spaces after the last line terminator of a chunk.
+     * @param text chunk text
+     * @param firstIndent indent of the first line of the chunk
+     * @return space count or {@link MarkupScanner#NO_HEADING} if the last line
+     *         has other characters
+     */
+    private static int lastLineIndent(final String text, final int firstIndent) {
+        int i = text.length();
+        while (i > 0 && !MarkupScanner.isLineTerminator(text.charAt(i - 1))) {
+            i--;
+            if (text.charAt(i) != ' ') {
+                return MarkupScanner.NO_HEADING;
+            }
+        }
+        if (i > 0) {
+            return text.length() - i;
+        }
+        // Whole chunk continues the previous line
+        if (firstIndent < 0) {
+            return MarkupScanner.NO_HEADING;
+        }
+        return firstIndent + text.length();
+    }
+
+    /**
+     * Find the last cut, after which no tag of the text pairs with a tag
+     * before it. Text must start at the document start or at such a cut,
+     * and every {@code <} before each candidate cut must be closed by
+     * {@code >} before it.
+     * @param text text
+     * @param tagSet recognized tags
+     * @param cuts candidate cuts in ascending order, all at line starts
+     * @param count number of candidate cuts
+     * @return last safe cut or -1
+     */
+    static int closedPrefix(final String text, final TagSet tagSet,
+                            final int[] cuts, final int count) {
+        TokenizedDocument document = new TokenizedDocument(text, tagSet, null, null);
+        List<HTMLTag> tags = document.findDocumentHTMLTags(TagType.OPENING);
+        tags.addAll(document.findDocumentHTMLTags(TagType.CLOSING));
+        Collections.sort(tags);
+        pairTags(tags);
+
+        int result = -1;
+        int reach = 0;
+        int t = 0;
+        for (int c = 0; c < count; c++) {
+            while (t < tags.size() && tags.get(t).getStart() < cuts[c]) {
+                HTMLTag tag = tags.get(t++);
+                if (tag.isOpening()) {
+                    if (!tag.hasPair()) {
+                        return result;
+                    }
+                    reach = Math.max(reach, tag.getPair().getEnd());
+                }
+            }
+            if (reach <= cuts[c]) {
+                result = cuts[c];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get document length in units of block offsets.
+     * @return document length
+     */
+    public int length() {
+        if (bytes == null) {
+            return text.length();
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Count characters of part of the document text without decoding it.
+     * @param start start offset
+     * @param end end offset
+     * @return number of UTF-16 characters
+     */
+    public int charCount(final int start, final int end) {
+        if (bytes == null) {
+            return end - start;
+        }
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int b = bytes[i] & 0xFF;
+            if ((b & UTF8_CONTINUATION_MASK) == UTF8_CONTINUATION) {
+                continue;
+            }
+            if (b >= UTF8_SUPPLEMENTARY_LEAD) {
+                count += 2;
+            } else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get part of the document text.
+     * @param start start offset
+     * @param end end offset
+     * @return text
+     */
+    public String substring(final int start, final int end) {
+        if (bytes == null) {
+            return text.substring(start, end);
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    public TagSet getTagSet() {
+        return tagSet;
+    }
+
+    /**
+     * Get document blocks in document order.
+     * @return unmodifiable block list
+     */
+    public List<Block> getBlocks() {
+        return blockView;
+    }
+
+    /**
+     * Get HTML tag for meta tag.
+     * @param metaBody meta tag
+     * @return HTML tag or null
+     */
+    public String getHtml(final String metaBody) {
+        HTMLTag tag = metaToTagMap.get(metaBody);
+        if (tag == null) {
+            return null;
+        }
+        return substring(tag.getStart(), tag.getEnd());
+    }
+
+    /**
+     * Get href attribute value of a tag.
+     * @param tag tag of this document
+     * @return href or null
+     */
+    public String getHref(final HTMLTag tag) {
+        if (!tag.hasHref()) {
+            return null;
+        }
+        return substring(tag.getHrefStart(), tag.getHrefEnd());
+    }
+
+    /**
+     * Get element tree of the document.
+     * @return document tree
+     */
+    public DocumentTree getTree() {
+        DocumentTree result = tree;
+        if (result == null) {
+            result = DocumentTree.build(blocks);
+            tree = result;
+        }
+        return result;
+    }
+
+    /**
+     * Check if writing the document with every segment left untranslated
+     * gives back the document text. It does not, if entities have to be
+     * normalized or text looks like meta tags.
+     * @return check result
+     */
+    public boolean isIdentityExact() {
+        Boolean result = identityExact;
+        if (result == null) {
+            result = DocumentWriter.rendersIdentity(this);
+            identityExact = result;
+        }
+        return result;
+    }
+
+    /**
+     * Write document text in UTF-8 without encoding it again.
+     * @param out output stream
+     * @return false if text is not stored in UTF-8 and nothing was written
+     * @throws IOException on write error
+     */
+    public boolean writeUtf8(final OutputStream out) throws IOException {
+        if (bytes == null) {
+            return false;
+        }
+        out.write(bytes);
+        return true;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    /**
+     * Check if all formatting tags are balanced.
+     * @return check result
+     */
+    public boolean isWellFormed() {
+        return wellFormed;
+    }
+
+    private List<HTMLTag> findDocumentHTMLTags(final TagType tagType) {
+        List<HTMLTag> result = new ArrayList<>();
+        MarkupScanner.MatchConsumer consumer = (name, start, end) ->
+                result.add(new HTMLTag(name, start, end, tagType));
+        if (tagType == TagType.OPENING) {
+            scanner.scanOpeningTags(tagSet.getFormattingTags(), consumer);
+        } else {
+            scanner.scanClosingTags(tagSet.getFormattingTags(), consumer);
+        }
+        return result;
+    }
+
+    /**
+     * Generate meta body for tag and its pair if it exists.
+     * Orphan tags receive unique meta bodies.
+     * @param tag
+     */
+    private void generateMetaBody(final HTMLTag tag) {
+
+        // Do not overwrite meta body values
+        if (tag.hasMetaBody()) {
+            return;
+        }
+
+        String tagBody = text.substring(tag.getStart(), tag.getEnd());
+        if (tag.isMarkdown() && tag.getName().equals(MarkupScanner.LINK_TAG)) {
+            // Opening "[" is the same for all links, the pair tells them apart
+            tagBody += text.substring(tag.getPair().getStart(), tag.getPair().getEnd());
+        }
+        String metaBody = htmlToMetaMap.get(tagBody);
+
+        if (metaBody == null || !tag.hasPair()) {
+            Character metaNameChar = tag.getName().charAt(0);
+            Integer metaCounter = metaCounters.get(metaNameChar);
+
+            if (metaCounter == null) {
+                metaCounter = 1;
+            } else {
+                metaCounter += 1;
+            }
+
+            metaCounters.put(metaNameChar, metaCounter);
+            String tagFormat;
+            if (tag.isOpening()) {
+                tagFormat = "<%s%d>";
+            } else {
+                tagFormat = "</%s%d>";
+            }
+            metaBody = String.format(tagFormat, metaNameChar, metaCounter);
+        }
+        tag.setMetaBody(metaBody);
+
+        // Extract href attribute for anchor tags and store it as comment
+        if (tag.getName().equals("a") && !tag.isMarkdown()) {
+            scanner.findHref(tag.getStart(), tag.getEnd(),
+                    (name, start, end) -> tag.setHref(start, end));
+        }
+
+        metaToTagMap.put(metaBody, tag);
+        htmlToMetaMap.put(tagBody, metaBody);
+
+        // Pair tag can be only closing because of walking direction.
+        if (tag.hasPair()) {
+            HTMLTag pair = tag.getPair();
+            String pairMetaBody = "</" + metaBody.substring(1);
+            pair.setMetaBody(pairMetaBody);
+            metaToTagMap.put(pairMetaBody, pair);
+        }
+    }
+
+    private TagType blockTagType(final int start, final int end) {
+        if (text.charAt(start + 1) == '/') {
+            return TagType.CLOSING;
+        }
+        int gt = text.lastIndexOf('>', end - 1);
+        if (text.charAt(gt - 1) == '/') {
+            return TagType.EMPTY;
+        }
+        return TagType.OPENING;
+    }
+
+    /**
+     * Pair tags. Each closing tag pairs with the nearest
+     * unpaired opening tag of the same name.
+     * @param tags tags in document order
+     */
+    private static void pairTags(final List<HTMLTag> tags) {
+        Map<String, Deque<HTMLTag>> openTags = new HashMap<>();
+        for (HTMLTag tag : tags) {
+            Deque<HTMLTag> stack = openTags.computeIfAbsent(tag.getName(),
+                    k -> new ArrayDeque<>());
+            if (tag.isOpening()) {
+                stack.push(tag);
+            } else if (!stack.isEmpty()) {
+                stack.pop().setPair(tag);
+            }
+        }
+    }
+
+    /**
+     * Tokenize document to atomic and formatting blocks.
+     * Create meta names for formatting tags.
+     * @param initialDepth formatting depth at the text start
+     * @param firstIndent spaces before the text on its first line, see
+     *                    {@link MarkupScanner#scanMarkdown}
+     * @return formatting depth at the text end
+     */
+    private int tokenize(final int initialDepth, final int firstIndent) {
+
+        // Add non-HTML and HTML atomic blocks to block list
+        scanner.scanAtomics((name, start, end) ->
+                blocks.add(new Block(BlockType.ATOMIC, start, end)));
+        scanner.scanBlockTags(tagSet.getBlockTags(), (name, start, end) ->
+                blocks.add(new BlockTag(name, start, end, blockTagType(start, end))));
+
+        // Search for formatting HTML tags
+        List<HTMLTag> allTags = findDocumentHTMLTags(TagType.OPENING);
+        allTags.addAll(findDocumentHTMLTags(TagType.CLOSING));
+        Collections.sort(allTags);
+
+        // Search for tag pairs
+        pairTags(allTags);
+
+        // Markdown tags are found paired
+        if (tagSet.isMarkdown()) {
+            scanner.scanMarkdown(firstIndent, (name, start, end) ->
+                    blocks.add(new Block(BlockType.ATOMIC, start, end)),
+                    (name, openStart, openEnd, closeStart, closeEnd) -> {
+                        HTMLTag opening = new HTMLTag(name, openStart, openEnd,
+                                TagType.OPENING, true);
+                        HTMLTag closing = new HTMLTag(name, closeStart, closeEnd,
+                                TagType.CLOSING, true);
+                        opening.setPair(closing);
+                        if (name.equals(MarkupScanner.LINK_TAG)) {
+                            // Closing tag is "](url)"
+                            opening.setHref(closeStart + 2, closeEnd - 1);
+                        }
+                        allTags.add(opening);
+                        allTags.add(closing);
+                    });
+            Collections.sort(allTags);
+        }
+
+        // Generate meta bodies for all tags
+        allTags.forEach(tag -> generateMetaBody(tag));
+        tagCount = allTags.size();
+
+        // Add tags to document blocks
+        blocks.addAll(allTags);
+
+        // Add dummy block at the end of the document to simplify logic
+        blocks.add(new Block(BlockType.ATOMIC, text.length(), text.length()));
+
+        // Sort blocks
+        Collections.sort(blocks);
+
+        // Create cache for found blocks
+        ArrayList<Block> blockCache = BufferPool.takeBlocks();
+
+        // Now search for payload blocks before/between other blocks
+        int lastBlockEnd = 0;
+
+        for (Block block : blocks) {
+            if (block.getStart() > lastBlockEnd) {
+                blockCache.add(new Block(BlockType.PAYLOAD, lastBlockEnd, block.getStart()));
+            }
+            lastBlockEnd = block.getEnd();
+        }
+
+        // Add found payload blocks to document blocks
+        blocks.addAll(blockCache);
+        BufferPool.giveBlocks(blockCache, blockCache.size());
+        Collections.sort(blocks);
+
+        // Remove atomic blocks (newlines) between opening and closing tags
+        int formattingDepth = initialDepth;
+        ArrayList<Block> keptBlocks = BufferPool.takeBlocks();
+        keptBlocks.ensureCapacity(blocks.size());
+        for (Block block : blocks) {
+            switch (block.getType()) {
+                case TAG:
+                    TagType tt = ((HTMLTag) block).getTagType();
+                    if (tt == TagType.OPENING) {
+                        formattingDepth++;
+                    } else if (tt == TagType.CLOSING) {
+                        formattingDepth--;
+                    }
+                    break;
+                case ATOMIC:
+                    if (formattingDepth > 0
+                            && scanner.isBlank(block.getStart(), block.getEnd())) {
+                        continue;
+                    }
+                    break;
+                default:
+            }
+            keptBlocks.add(block);
+        }
+        blocks.clear();
+        blocks.addAll(keptBlocks);
+        BufferPool.giveBlocks(keptBlocks, keptBlocks.size());
+
+        wellFormed = formattingDepth == 0;
+        scanner = null;
+        return formattingDepth;
+    }
+
+    /**
+     * Store text in UTF-8 and move block and href bounds to byte offsets.
+     * Text with unpaired surrogates can not be encoded and stays as is.
+     */
+    private void compact() {
+        int textLength = text.length();
+        for (int i = 0; i < textLength; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < textLength
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return;
+            }
+        }
+
+        // Collect all offsets in text order
+        int[] offsets = new int[(blocks.size() + tagCount) * 2];
+        int count = 0;
+        for (Block block : blocks) {
+            offsets[count++] = block.getStart();
+            offsets[count++] = block.getEnd();
+            if (block.getType() == BlockType.TAG && ((HTMLTag) block).hasHref()) {
+                offsets[count++] = ((HTMLTag) block).getHrefStart();
+                offsets[count++] = ((HTMLTag) block).getHrefEnd();
+            }
+        }
+        Arrays.sort(offsets, 0, count);
+
+        // Convert them to byte offsets in one walk over the text
+        int[] byteOffsets = new int[count];
+        int charPos = 0;
+        int bytePos = 0;
+        for (int i = 0; i < count; i++) {
+            while (charPos < offsets[i]) {
+                char c = text.charAt(charPos++);
+                if (c < UTF8_ONE_BYTE_LIMIT) {
+                    bytePos += 1;
+                } else if (c < UTF8_TWO_BYTES_LIMIT) {
+                    bytePos += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    bytePos += UTF8_SUPPLEMENTARY_BYTES;
+                    charPos++;
+                } else {
+                    bytePos += UTF8_BMP_BYTES;
+                }
+            }
+            byteOffsets[i] = bytePos;
+        }
+
+        for (Block block : blocks) {
+            block.relocate(toByteOffset(offsets, byteOffsets, count, block.getStart()),
+                    toByteOffset(offsets, byteOffsets, count, block.getEnd()));
+            if (block.getType() == BlockType.TAG && ((HTMLTag) block).hasHref()) {
+                HTMLTag tag = (HTMLTag) block;
+                tag.setHref(toByteOffset(offsets, byteOffsets, count, tag.getHrefStart()),
+                        toByteOffset(offsets, byteOffsets, count, tag.getHrefEnd()));
+            }
+        }
+
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        text = null;
+    }
+
+    private static int toByteOffset(final int[] offsets, final int[] byteOffsets,
+                                    final int count, final int offset) {
+        return byteOffsets[Arrays.binarySearch(offsets, 0, count, offset)];
+    }
+}
@@ -0,0 +1,120 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+/**
+ * Finds markup delimiters in text.
+ *
+ * Java 21 version of the class. Long texts are copied to a char array
+ * and searched with {@link VectorKernels} when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}; without the module, or with
+ * {@code -Dtipe.vector=false}, the scalar loops are used as in the base
+ * version.
+ */
+final class DelimiterSearch {
+
+    // Vector kernels are worth a copy of the text only for long texts
+    private static final int MIN_VECTOR_LENGTH = 256;
+
+    private static final boolean VECTOR = Boolean.parseBoolean(
+            System.getProperty("tipe.vector", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final CharSequence text;
+    private final char[] chars; // null when scalar loops are used
+
+    DelimiterSearch(final CharSequence text) {
+        this.text = text;
+        if (VECTOR && text.length() >= MIN_VECTOR_LENGTH) {
+            chars = text.toString().toCharArray();
+        } else {
+            chars = null;
+        }
+    }
+
+    /**
+     * Check if vector kernels are used.
+     * @return check result
+     */
+    boolean isVectorized() {
+        return chars != null;
+    }
+
+    /**
+     * Find first occurrence of a character in a range.
+     * @param c character
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOf(final char c, final int from, final int to) {
+        if (chars != null) {
+            return VectorKernels.indexOf(chars, c, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find first occurrence of any of two characters in a range.
+     * @param a first character
+     * @param b second character
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOfEither(final char a, final char b, final int from, final int to) {
+        if (chars != null) {
+            return VectorKernels.indexOfEither(chars, a, b, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find first line terminator in a range, see
+     * {@link MarkupScanner#isLineTerminator(char)}.
+     * @param from range start
+     * @param to range end, exclusive
+     * @return position or -1 if not found
+     */
+    int indexOfLineTerminator(final int from, final int to) {
+        if (chars != null) {
+            return VectorKernels.indexOfLineTerminator(chars, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            if (MarkupScanner.isLineTerminator(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
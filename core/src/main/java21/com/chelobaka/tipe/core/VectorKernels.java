@@ -0,0 +1,104 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels of {@link DelimiterSearch}. Each kernel compares a
+ * vector of chars at a time and finishes the range tail with a scalar
+ * loop. The class is loaded only when {@code jdk.incubator.vector} is
+ * available.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    // Line terminators besides '\n' and '\r'
+    private static final short NEXT_LINE = 0x85;
+    private static final short LINE_SEPARATOR = 0x2028;
+    private static final short PARAGRAPH_SEPARATOR = 0x2029;
+
+    static int indexOf(final char[] chars, final char c, final int from, final int to) {
+        short target = (short) c;
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(0, to - from));
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Short> mask = ShortVector.fromCharArray(SPECIES, chars, i)
+                    .eq(target);
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int indexOfEither(final char[] chars, final char a, final char b, final int from,
+                             final int to) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(0, to - from));
+        for (; i < bound; i += SPECIES.length()) {
+            ShortVector vector = ShortVector.fromCharArray(SPECIES, chars, i);
+            VectorMask<Short> mask = vector.eq((short) a).or(vector.eq((short) b));
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (chars[i] == a || chars[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int indexOfLineTerminator(final char[] chars, final int from, final int to) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(0, to - from));
+        for (; i < bound; i += SPECIES.length()) {
+            ShortVector vector = ShortVector.fromCharArray(SPECIES, chars, i);
+            VectorMask<Short> mask = vector.eq((short) '\n').or(vector.eq((short) '\r'))
+                    .or(vector.eq(NEXT_LINE)).or(vector.eq(LINE_SEPARATOR))
+                    .or(vector.eq(PARAGRAPH_SEPARATOR));
+            if (mask.anyTrue()) {
+                return i + mask.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (MarkupScanner.isLineTerminator(chars[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private VectorKernels() {
+        // Disable instance creation.
+    }
+}
@@ -0,0 +1,80 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks delimiter search against plain loops. Run by {@code gradle vectorTest}
+ * too, so vector kernels give the same answers as the scalar version.
+ */
+public class DelimiterSearchTest {
+
+    private static final char[] ALPHABET = {
+        'a', ' ', '<', '{', '}', '\n', '\r', '\u0085', ' ', ' ', 'Ā', '㰀',
+        '਀', 'ഀ',
+    };
+
+    private static final int TEXTS = 200;
+    private static final int MAX_LENGTH = 2000;
+
+    @Test
+    public void testRandomTexts() {
+        Random random = new Random(48);
+        for (int n = 0; n < TEXTS; n++) {
+            char[] chars = new char[random.nextInt(MAX_LENGTH)];
+            for (int i = 0; i < chars.length; i++) {
+                // Mostly plain text with rare delimiters
+                if (random.nextInt(50) == 0) {
+                    chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+                } else {
+                    chars[i] = 'a';
+                }
+            }
+            String text = new String(chars);
+            DelimiterSearch search = new DelimiterSearch(text);
+            for (int k = 0; k < 20; k++) {
+                int from = random.nextInt(chars.length + 1);
+                int to = from + random.nextInt(chars.length - from + 1);
+                assertEquals(indexOf(text, "<", from, to), search.indexOf('<', from, to), text);
+                assertEquals(indexOf(text, "{\n", from, to),
+                        search.indexOfEither('{', '\n', from, to), text);
+                assertEquals(indexOf(text, "\n\r\u0085  ", from, to),
+                        search.indexOfLineTerminator(from, to), text);
+            }
+        }
+    }
+
+    private static int indexOf(final String text, final String chars, final int from,
+                               final int to) {
+        for (int i = from; i < to; i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
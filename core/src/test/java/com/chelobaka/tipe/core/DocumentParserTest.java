@@ -0,0 +1,150 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DocumentParserTest {
+
+    private static final String PART = "<p>First <b>bold</b> line</p>\n"
+            + "  <p>Second <i>split\n   line</i> text</p>\n"
+            + "</b>Orphan <a href=\"x.html\">link</a>\n"
+            + "{{IMG image.png}}\n"
+            + "<div/>\n"
+            + "<p>Same <b>bold</b> and <b>other</b></p>\r\n";
+
+    private static final String SOURCE = " \n" + PART + PART + "Open <i>tag\n" + PART;
+
+    @Test
+    public void testEventsReproduceDocument() throws Exception {
+        for (int bufferSize : new int[] {1, 7, 8192}) {
+            assertEquals(SOURCE, reproduce(SOURCE, bufferSize));
+        }
+    }
+
+    @Test
+    public void testEventsReproduceFormattedDocument() throws Exception {
+        // Whitespace atomics inside formatting elements come as ignorable whitespace
+        String source = SOURCE.replace("b>", "strong>").replace("i>", "em>");
+        for (int bufferSize : new int[] {1, 7, 8192}) {
+            assertEquals(source, reproduce(source, bufferSize));
+        }
+
+        List<String> ignorable = new ArrayList<>();
+        DocumentParser.parse(new StringReader(PART.replace("i>", "em>")), TagSet.DEFAULT,
+                new DocumentHandler() {
+                    @Override
+                    public void ignorableWhitespace(final String text) {
+                        ignorable.add(text);
+                    }
+                });
+        assertEquals(Collections.singletonList("\n   "), ignorable);
+    }
+
+    @Test
+    public void testSegmentsMatchWholeDocument() throws Exception {
+        assertSegmentsMatch(SOURCE, TagSet.DEFAULT);
+    }
+
+    @Test
+    public void testMarkdownSegmentsMatchWholeDocument() throws Exception {
+        // Chunks are cut after leading spaces, headings must still see the whole indent
+        String source = "# Title *one*\n"
+                + "intro\n     ## Not heading *x*\n"
+                + "   ## Heading [link](page.html)\n"
+                + "\t# Tab _em_\n"
+                + "_escaped\\\n>line_ `code`\n";
+        assertSegmentsMatch(source,
+                TagSet.forOptions(Collections.singletonMap(TagSet.OPTION_MARKDOWN, "true")));
+    }
+
+    private static void assertSegmentsMatch(final String source, final TagSet tagSet)
+            throws Exception {
+        List<String> expected = new ArrayList<>();
+        DocumentWriter.scan(TokenizedDocument.tokenize(source, tagSet),
+                (segment, firstBlock) -> expected.add(describe(segment)));
+
+        for (int bufferSize : new int[] {1, 5, 8192}) {
+            List<String> actual = new ArrayList<>();
+            DocumentParser.parse(new StringReader(source), tagSet, new DocumentHandler() {
+                @Override
+                public void segment(final Segment segment) {
+                    actual.add(describe(segment));
+                }
+            }, bufferSize);
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static String reproduce(final String source, final int bufferSize)
+            throws Exception {
+        StringBuilder output = new StringBuilder();
+        DocumentParser.parse(new StringReader(source), TagSet.DEFAULT, new DocumentHandler() {
+            @Override
+            public void startTag(final String name, final String html, final String metaTag) {
+                output.append(html);
+            }
+
+            @Override
+            public void endTag(final String name, final String html, final String metaTag) {
+                output.append(html);
+            }
+
+            @Override
+            public void emptyTag(final String name, final String html) {
+                output.append(html);
+            }
+
+            @Override
+            public void atomic(final String text) {
+                output.append(text);
+            }
+
+            @Override
+            public void ignorableWhitespace(final String text) {
+                output.append(text);
+            }
+
+            @Override
+            public void imageMacro(final String text) {
+                output.append(text);
+            }
+
+            @Override
+            public void payload(final String text) {
+                output.append(text);
+            }
+        }, bufferSize);
+        return output.toString();
+    }
+
+    private static String describe(final Segment segment) {
+        return segment.getSource() + " | " + segment.getComment();
+    }
+}
@@ -0,0 +1,95 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DocumentTreeTest {
+
+    @Test
+    public void testNesting() {
+        TokenizedDocument document = TokenizedDocument.tokenize(
+                "<table><tr><td>One <strong>two</strong></td><td>Three</td></tr></table>"
+                        + "<ul><li>Four</li></ul><div/>Five", TagSet.DEFAULT);
+        DocumentTree tree = document.getTree();
+        List<Block> blocks = document.getBlocks();
+
+        int strong = find(document, "<strong>");
+        int closingStrong = find(document, "</strong>");
+        int two = strong + 1;
+        int three = find(document, "Three");
+        int four = find(document, "Four");
+
+        assertEquals(closingStrong, tree.getPairOf(strong));
+        assertEquals(strong, tree.getPairOf(closingStrong));
+        assertEquals("strong", tree.getName(tree.getEnclosing(two)));
+        assertEquals("td", tree.getName(tree.getEnclosingBlock(two)));
+        assertEquals("td", tree.getName(tree.getEnclosing(three)));
+        assertEquals("li", tree.getName(tree.getEnclosingBlock(four)));
+
+        int table = tree.getFirstChild(DocumentTree.ROOT);
+        assertEquals("table", tree.getName(table));
+        int ul = tree.getNextSibling(table);
+        assertEquals("ul", tree.getName(ul));
+        int div = tree.getNextSibling(ul);
+        assertEquals(DocumentTree.NONE, tree.getCloseBlock(div));
+        assertEquals(DocumentTree.NONE, tree.getFirstChild(div));
+        assertEquals(DocumentTree.ROOT, tree.getEnclosingBlock(find(document, "Five")));
+        int tr = tree.getFirstChild(table);
+        assertEquals("tr", tree.getName(tr));
+        int firstTd = tree.getFirstChild(tr);
+        assertEquals("td", tree.getName(tree.getNextSibling(firstTd)));
+        assertEquals(DocumentTree.ROOT, tree.getContainer(table));
+        assertEquals(firstTd, tree.getContainer(tree.getNodeOf(strong)));
+
+        Block threeBlock = blocks.get(three);
+        assertEquals(three, tree.getBlockAt(threeBlock.getStart() + 1));
+    }
+
+    @Test
+    public void testBrokenMarkup() {
+        TokenizedDocument document = TokenizedDocument.tokenize(
+                "</div><div><p>Open <em>text</div> Tail</em>", TagSet.DEFAULT);
+        DocumentTree tree = document.getTree();
+
+        int orphan = find(document, "</div>");
+        assertEquals(DocumentTree.NONE, tree.getNodeOf(orphan));
+        int tail = find(document, "Tail");
+        assertEquals(DocumentTree.ROOT, tree.getEnclosingBlock(tail));
+        assertEquals(find(document, "<em>"), tree.getPairOf(find(document, "</em>")));
+    }
+
+    private static int find(final TokenizedDocument document, final String text) {
+        List<Block> blocks = document.getBlocks();
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Block block = blocks.get(i);
+            if (document.substring(block.getStart(), block.getEnd()).equals(text)) {
+                return i;
+            }
+        }
+        throw new AssertionError(text);
+    }
+}
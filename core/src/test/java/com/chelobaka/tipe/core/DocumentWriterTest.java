@@ -0,0 +1,172 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DocumentWriterTest {
+
+    private static final String SOURCE = "<p>Fish &amp; chips</p>\r\n"
+            + "<p><strong>Bold <a href=\"menu.html\">menu</a></strong></p>\n";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TokenizedDocument document = TokenizedDocument.tokenize(
+                DocumentWriter.read(new StringReader(SOURCE)), TagSet.DEFAULT);
+        StringBuilder output = new StringBuilder();
+        DocumentWriter.translate(document, output::append, (source, comment) -> source);
+        assertEquals(SOURCE, output.toString());
+    }
+
+    @Test
+    public void testTranslate() throws Exception {
+        TokenizedDocument document = TokenizedDocument.tokenize(SOURCE, TagSet.DEFAULT);
+        StringBuilder output = new StringBuilder();
+        DocumentWriter.translate(document, output::append, new DocumentWriter.Translator() {
+            @Override
+            public String translate(final String source, final String comment) {
+                return source.replace("Fish", "Poisson").replace("menu", "carte");
+            }
+
+            @Override
+            public String translateHref(final String href, final String metaTag) {
+                return "fr/" + href;
+            }
+        });
+        assertEquals("<p>Poisson &amp; chips</p>\r\n"
+                + "<p><strong>Bold <a href=\"fr/menu.html\">carte</a></strong></p>\n",
+                output.toString());
+    }
+
+    @Test
+    public void testIdentityExact() {
+        assertTrue(TokenizedDocument.tokenize(SOURCE, TagSet.DEFAULT).isIdentityExact());
+        // Raw characters are written back as entities
+        assertFalse(TokenizedDocument.tokenize("<p>Fish & chips</p>", TagSet.DEFAULT)
+                .isIdentityExact());
+        // Line break inside of unclosed formatting tag is dropped
+        assertFalse(TokenizedDocument.tokenize("<em>\n", TagSet.DEFAULT).isIdentityExact());
+    }
+
+    @Test
+    public void testScan() {
+        TokenizedDocument document = TokenizedDocument.tokenize(SOURCE, TagSet.DEFAULT);
+        List<String> sources = new ArrayList<>();
+        DocumentWriter.scan(document, (segment, firstBlock) -> {
+            if (!segment.getSource().trim().isEmpty()) {
+                sources.add(segment.getSource());
+            }
+        });
+        assertEquals(Arrays.asList("Fish & chips", "Bold <a1>menu</a1>"), sources);
+    }
+
+    @Test
+    public void testBufferPool() throws Exception {
+        BufferPool.clear();
+        String small = DocumentWriter.read(new StringReader(SOURCE));
+        assertEquals(SOURCE, small);
+        assertEquals(1, BufferPool.size());
+        assertEquals(SOURCE, DocumentWriter.read(new StringReader(SOURCE)));
+        assertEquals(1, BufferPool.size());
+
+        // Buffer grown above the cap is released
+        BufferPool.clear();
+        char[] chars = new char[BufferPool.CAP + 1];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        assertEquals(large, DocumentWriter.read(new StringReader(large)));
+        assertEquals(0, BufferPool.size());
+
+        // Small builder is reused, large one is not
+        StringBuilder builder = BufferPool.takeBuilder();
+        builder.append(SOURCE);
+        BufferPool.give(builder);
+        assertSame(builder, BufferPool.takeBuilder());
+        assertEquals(0, builder.length());
+        builder.append(large);
+        BufferPool.give(builder);
+        assertNotSame(builder, BufferPool.takeBuilder());
+
+        // Too small buffer stays in the pool
+        BufferPool.clear();
+        char[] buffer = BufferPool.takeChars(SOURCE.length());
+        BufferPool.give(buffer);
+        assertNotSame(buffer, BufferPool.takeChars(buffer.length + 1));
+        assertSame(buffer, BufferPool.takeChars(buffer.length));
+
+        // Block list is judged by its peak size, not by the size it is cleared to
+        BufferPool.clear();
+        BufferPool.giveBlocks(new ArrayList<>(), BufferPool.CAP + 1);
+        assertEquals(0, BufferPool.size());
+        DocumentWriter.translate(TokenizedDocument.tokenize(SOURCE, TagSet.DEFAULT),
+                new StringBuilder()::append, (source, comment) -> source);
+        assertEquals(1, BufferPool.size());
+        BufferPool.clear();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        String table = "<table><tr><td>One</td><td><strong>Two</strong></td>\n"
+                + "<td>Three <a href=\"x.html\">four</a></td></tr>\n"
+                + "<tr><td>Five six seven eight</td><td>Nine</td></tr></table>\n"
+                + "<ul><li><b>Alpha</b> beta</li> <li>Gamma</li></ul>\n";
+        Map<String, String> options = new HashMap<>();
+        options.put(TagSet.OPTION_COALESCE, "true");
+        options.put(TagSet.OPTION_FORMATTING_TAGS, "strong, a, b");
+        TagSet coalesce = TagSet.forOptions(options);
+        TokenizedDocument document = TokenizedDocument.tokenize(table, coalesce);
+        List<String> sources = new ArrayList<>();
+        DocumentWriter.scan(document, (segment, firstBlock) -> sources.add(segment.getSource()));
+        // Long cell and the last cell of a row are not merged, used <b1> is skipped
+        assertEquals(Arrays.asList("One<b1/>Two<b2/>Three <a1>four</a1>",
+                "Five six seven eight", "Nine", "<b1>Alpha</b1> beta<b2/>Gamma"), sources);
+
+        StringBuilder output = new StringBuilder();
+        DocumentWriter.translate(document, output::append, (source, comment) -> source);
+        assertEquals(table, output.toString());
+
+        output.setLength(0);
+        DocumentWriter.translate(document, output::append,
+                (source, comment) -> source.replace("One", "Uno").replace("Gamma", "Gama"));
+        assertEquals(table.replace("One", "Uno").replace("Gamma", "Gama"), output.toString());
+
+        // Off by default
+        sources.clear();
+        DocumentWriter.scan(TokenizedDocument.tokenize(table, TagSet.DEFAULT),
+                (segment, firstBlock) -> sources.add(segment.getSource()));
+        assertTrue(sources.contains("One"));
+        assertFalse(TagSet.DEFAULT.isCoalesce());
+    }
+}
@@ -0,0 +1,88 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static com.chelobaka.tipe.core.MetaTagValidator.ProblemType.BROKEN_HREF;
+import static com.chelobaka.tipe.core.MetaTagValidator.ProblemType.CROSSED;
+import static com.chelobaka.tipe.core.MetaTagValidator.ProblemType.EXTRA;
+import static com.chelobaka.tipe.core.MetaTagValidator.ProblemType.MISSING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetaTagValidatorTest {
+
+    private static final String SOURCE = "<s1>Bold <a1>link</a1></s1> and <i1>image";
+
+    @Test
+    public void testFindMetaTags() {
+        assertEquals(Arrays.asList("<s1>", "<a1>", "</a1>", "</s1>", "<i1>"),
+                MetaTagValidator.findMetaTags(SOURCE));
+        assertEquals(Arrays.asList("<b2/>", "</x10>"),
+                MetaTagValidator.findMetaTags("a < b <b2/> <1> <x> </x10> <ab1> <s1"));
+    }
+
+    @Test
+    public void testValidate() {
+        assertTrue(MetaTagValidator.validate(SOURCE, SOURCE).isEmpty());
+        assertTrue(MetaTagValidator.validate(SOURCE,
+                "<i1>Image and <s1><a1>link</a1> bold</s1>").isEmpty());
+
+        assertEquals(problems(MISSING, "</a1>", EXTRA, "<e1>"),
+                MetaTagValidator.validate(SOURCE, "<s1>Bold <a1>link <e1></s1> and <i1>image"));
+        assertEquals(problems(MISSING, "<i1>", EXTRA, "<s1>"),
+                MetaTagValidator.validate(SOURCE, "<s1>Bold <a1>link</a1></s1> <s1>and"));
+        assertEquals(problems(CROSSED, "</s1>"),
+                MetaTagValidator.validate(SOURCE, "<s1>Bold <a1>link</s1></a1> and <i1>image"));
+        assertEquals(problems(CROSSED, "</a1>"),
+                MetaTagValidator.validate(SOURCE, "<s1>Bold </a1>link<a1></s1> and <i1>image"));
+
+        // Orphan closing tag has no pair to nest with
+        assertTrue(MetaTagValidator.validate("One</e2> two <e1>three</e1>",
+                "<e1>Three</e1> two one</e2>").isEmpty());
+    }
+
+    @Test
+    public void testValidateHref() {
+        assertTrue(MetaTagValidator.validateHref("https://example.com/a?b=c#d").isEmpty());
+        for (String href : Arrays.asList("", "a b", "a\"b", "a>b", "a\n")) {
+            assertEquals(problems(BROKEN_HREF, href), MetaTagValidator.validateHref(href));
+        }
+    }
+
+    private static List<MetaTagValidator.Problem> problems(final Object... pairs) {
+        if (pairs.length == 0) {
+            return Collections.emptyList();
+        }
+        MetaTagValidator.Problem[] result = new MetaTagValidator.Problem[pairs.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new MetaTagValidator.Problem((MetaTagValidator.ProblemType) pairs[2 * i],
+                    (String) pairs[2 * i + 1]);
+        }
+        return Arrays.asList(result);
+    }
+}
@@ -0,0 +1,108 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.tipe.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenizedDocumentTest {
+
+    @Test
+    public void testNonLatinText() {
+        String text = "<p>Текст 😀 <a href=\"ссылка.html\">ссылка</a></p>";
+        TokenizedDocument document = TokenizedDocument.tokenize(text, TagSet.DEFAULT);
+        assertEquals(text, rebuild(document));
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length,
+                document.length());
+        assertEquals(text.length(), document.charCount(0, document.length()));
+        for (Block block : document.getBlocks()) {
+            if (block.getType() == BlockType.TAG && ((HTMLTag) block).hasHref()) {
+                assertEquals("ссылка.html", document.getHref((HTMLTag) block));
+                assertEquals("<a href=\"ссылка.html\">",
+                        document.getHtml(((HTMLTag) block).getMetaBody()));
+            }
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogate() {
+        String text = "<p>Broken \uD83D <strong>text</strong></p>";
+        TokenizedDocument document = TokenizedDocument.tokenize(text, TagSet.DEFAULT);
+        assertEquals(text, rebuild(document));
+        assertEquals(text.length(), document.length());
+        assertEquals(text.length(), document.charCount(0, document.length()));
+    }
+
+    @Test
+    public void testMarkdown() throws IOException {
+        String text = "# Title with **bold** text\n"
+                + "Some *em*, __strong__ and [a link](page_one.html) in <em>one</em> line.\n"
+                + "2 * 3, snake_case, `code *x*`, \\*escaped\\* and [no link](a b)\n";
+        TagSet tagSet = TagSet.forOptions(Collections.singletonMap(TagSet.OPTION_MARKDOWN,
+                "true"));
+        TokenizedDocument document = TokenizedDocument.tokenize(text, tagSet);
+        assertEquals(text, rebuild(document));
+
+        List<String> sources = new ArrayList<>();
+        DocumentWriter.scan(document, (segment, firstBlock) -> sources.add(segment.getSource()));
+        assertEquals(Arrays.asList("Title with <s1>bold</s1> text",
+                "Some <e1>em</e1>, <s2>strong</s2> and <a1>a link</a1> in <e2>one</e2> line.",
+                "2 * 3, snake_case, `code *x*`, \\*escaped\\* and [no link](a b)"), sources);
+
+        StringBuilder output = new StringBuilder();
+        DocumentWriter.translate(document, output::append, new DocumentWriter.Translator() {
+            @Override
+            public String translate(final String source, final String comment) {
+                return source.replace("<a1>a link</a1>", "<a1>ссылка</a1>");
+            }
+
+            @Override
+            public String translateHref(final String href, final String metaTag) {
+                return "ru/" + href;
+            }
+        });
+        assertEquals(text.replace("[a link](page_one.html)", "[ссылка](ru/page_one.html)"),
+                output.toString());
+
+        // Markdown is off by default
+        sources.clear();
+        DocumentWriter.scan(TokenizedDocument.tokenize(text, TagSet.DEFAULT),
+                (segment, firstBlock) -> sources.add(segment.getSource()));
+        assertEquals("# Title with **bold** text", sources.get(0));
+    }
+
+    private static String rebuild(final TokenizedDocument document) {
+        StringBuilder builder = new StringBuilder();
+        for (Block block : document.getBlocks()) {
+            builder.append(document.substring(block.getStart(), block.getEnd()));
+        }
+        return builder.toString();
+    }
+}
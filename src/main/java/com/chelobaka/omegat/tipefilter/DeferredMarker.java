@@ -0,0 +1,52 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.gui.editor.mark.IMarker;
+import org.omegat.gui.editor.mark.Mark;
+
+import java.util.List;
+
+/**
+ * Marker registered at startup in place of {@link HTMLTagMarker}.
+ * The real marker and everything it needs are loaded only after the filter
+ * processed a tipe³ file; until then every call returns at once.
+ */
+class DeferredMarker implements IMarker {
+
+    private volatile HTMLTagMarker marker;
+
+    public List<Mark> getMarksForEntry(final SourceTextEntry ste, final String sourceText,
+                                       final String translationText, final boolean isActive)
+            throws Exception {
+        if (!TipeFilter.isActivated()) {
+            return null;
+        }
+        HTMLTagMarker current = marker;
+        if (current == null) {
+            current = new HTMLTagMarker();
+            marker = current;
+        }
+        return current.getMarksForEntry(ste, sourceText, translationText, isActive);
+    }
+}
@@ -0,0 +1,177 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.omegat.core.Core;
+import org.omegat.core.data.IProject;
+import org.omegat.util.Log;
+
+/**
+ * Digests of target files written by the filter.
+ * A record holds content hash, length and modification time of the target,
+ * so a target changed by somebody else is never mistaken for an unchanged one.
+ * Records are kept in memory and written by {@link #saveAll()} once target
+ * generation is over.
+ */
+final class DigestStore {
+
+    static final String FILE_NAME = "tipe-digests.properties";
+
+    // Stores by file path
+    private static final Map<String, DigestStore> STORES = new HashMap<>();
+
+    // Store used when no project is loaded
+    private static final DigestStore MEMORY = new DigestStore(null);
+
+    private final File file;
+    private final Properties records = new Properties();
+    private boolean dirty;
+
+    private DigestStore(final File file) {
+        this.file = file;
+        if (file != null && file.isFile()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                records.load(in);
+            } catch (IOException e) {
+                Log.log(e);
+            }
+        }
+    }
+
+    /**
+     * Get store of currently loaded project.
+     * @return digest store
+     */
+    static DigestStore current() {
+        IProject project = Core.getProject();
+        if (project == null || !project.isProjectLoaded()) {
+            return MEMORY;
+        }
+        String internal = project.getProjectProperties().getProjectInternal();
+        if (internal == null) {
+            return MEMORY;
+        }
+        return forFile(new File(internal, FILE_NAME));
+    }
+
+    /**
+     * Get store kept in given file.
+     * @param file store file
+     * @return digest store
+     */
+    static DigestStore forFile(final File file) {
+        synchronized (STORES) {
+            return STORES.computeIfAbsent(file.getAbsolutePath(),
+                    path -> new DigestStore(new File(path)));
+        }
+    }
+
+    /**
+     * Write records of all changed stores to their files.
+     */
+    static void saveAll() {
+        synchronized (STORES) {
+            for (DigestStore store : STORES.values()) {
+                store.save();
+            }
+        }
+    }
+
+    static DigestStore memory() {
+        return MEMORY;
+    }
+
+    /**
+     * Check if target file still holds content with given digest.
+     * @param target target file
+     * @param hash content hash
+     * @param length content length in bytes
+     * @return true if target is up to date
+     */
+    synchronized boolean isCurrent(final File target, final String hash, final long length) {
+        String record = records.getProperty(target.getAbsolutePath());
+        if (record == null || !target.isFile()) {
+            return false;
+        }
+        return record.equals(format(hash, length, target.lastModified()))
+                && target.length() == length;
+    }
+
+    /**
+     * Remember digest of just written target file.
+     * @param target target file
+     * @param hash content hash
+     * @param length content length in bytes
+     */
+    synchronized void put(final File target, final String hash, final long length) {
+        records.setProperty(target.getAbsolutePath(),
+                format(hash, length, target.lastModified()));
+        dirty = true;
+    }
+
+    private static String format(final String hash, final long length, final long lastModified) {
+        return hash + ' ' + length + ' ' + lastModified;
+    }
+
+    /**
+     * Write records to a temporary file and move it over the store file,
+     * so a crash never leaves a truncated store.
+     */
+    private synchronized void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        File temp = null;
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile("tipe", ".tmp", dir);
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                records.store(out, null);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            dirty = false;
+        } catch (IOException e) {
+            Log.log(e);
+        } finally {
+            if (temp != null && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+}
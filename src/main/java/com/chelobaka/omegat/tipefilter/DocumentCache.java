@@ -0,0 +1,333 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import com.chelobaka.tipe.core.BufferPool;
+import com.chelobaka.tipe.core.Segment;
+import com.chelobaka.tipe.core.TagSet;
+import com.chelobaka.tipe.core.TokenizedDocument;
+
+/**
+ * Cache of tokenized source documents and their last generated targets.
+ * Entries are held by soft references, so the cache never keeps memory
+ * the JVM needs elsewhere.
+ */
+final class DocumentCache {
+
+    // Maximum number of cached documents
+    private static final int MAX_ENTRIES = Integer.getInteger("tipe.cache.entries", 4096);
+
+    private static final Map<String, SoftReference<Entry>> ENTRIES =
+            new LinkedHashMap<String, SoftReference<Entry>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, SoftReference<Entry>> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Read buffer size for checksums
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
+
+    // Checksum of a file that could not be read, it matches nothing
+    private static final long UNREADABLE = -1;
+
+    /**
+     * Source file state the cached tokenization is valid for.
+     * A file saved twice within the timestamp resolution may keep its
+     * length and modification time, so its content checksum is compared too.
+     */
+    static final class Stamp {
+        private final long length;
+        private final long lastModified;
+        private final long checksum;
+        private final String encoding;
+        private final TagSet tagSet;
+
+        Stamp(final File file, final String encoding, final TagSet tagSet) {
+            length = file.length();
+            lastModified = file.lastModified();
+            checksum = checksum(file);
+            this.encoding = encoding;
+            this.tagSet = tagSet;
+        }
+
+        boolean matches(final File file) {
+            return length == file.length() && lastModified == file.lastModified()
+                    && checksum != UNREADABLE && checksum == checksum(file);
+        }
+
+        boolean matches(final Stamp that) {
+            return length == that.length && lastModified == that.lastModified
+                    && checksum != UNREADABLE && checksum == that.checksum
+                    && tagSet == that.tagSet
+                    && Objects.equals(encoding, that.encoding);
+        }
+    }
+
+    /**
+     * Compute CRC-32 of file content.
+     * @param file file
+     * @return checksum or {@link #UNREADABLE} on read error
+     */
+    private static long checksum(final File file) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return UNREADABLE;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Segments of a generated target document.
+     * Segment {@code i} is the {@code i}-th block group with payload.
+     */
+    static final class Target {
+        private final String output;
+        private final TokenizedDocument document;
+        private final String[] keys;
+        private final int[] starts;
+        private final int[] ends;
+
+        Target(final String output, final String[] keys, final int[] starts, final int[] ends) {
+            this.output = output;
+            this.document = null;
+            this.keys = keys;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * Create target of untranslated document, which is the document
+         * itself, so segment outputs are slices of its text.
+         * @param document document
+         * @param segments document segments
+         * @param hrefs translated hrefs of each segment
+         */
+        Target(final TokenizedDocument document, final List<Segment> segments,
+               final List<Map<String, String>> hrefs) {
+            this.output = null;
+            this.document = document;
+            keys = new String[segments.size()];
+            starts = new int[segments.size()];
+            ends = new int[segments.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Segment segment = segments.get(i);
+                keys[i] = segmentKey(segment.getSource(), hrefs.get(i).values());
+                starts[i] = segment.getGroupStart();
+                ends[i] = segment.getGroupEnd();
+            }
+        }
+
+        /**
+         * Find previous output of a segment.
+         * @param index segment index
+         * @param key segment translation key
+         * @return previous output or null if segment changed
+         */
+        String getSegment(final int index, final String key) {
+            if (index >= keys.length || !key.equals(keys[index])) {
+                return null;
+            }
+            if (document != null) {
+                return document.substring(starts[index], ends[index]);
+            }
+            return output.substring(starts[index], ends[index]);
+        }
+    }
+
+    /**
+     * Collects generated output and its segments.
+     */
+    static final class TargetBuilder {
+        private final StringBuilder output = BufferPool.takeBuilder();
+        private String[] keys = new String[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int count;
+
+        void append(final String text) {
+            output.append(text);
+        }
+
+        /**
+         * Record segment output. Segment text is appended later with
+         * {@link #append(String)} together with its surroundings.
+         * @param key segment translation key
+         * @param text segment output
+         */
+        void addSegment(final String key, final String text) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            keys[count] = key;
+            starts[count] = output.length();
+            ends[count] = output.length() + text.length();
+            count++;
+        }
+
+        /**
+         * Build target. Builder can not be used afterwards.
+         * @return target
+         */
+        Target build() {
+            String text = output.toString();
+            BufferPool.give(output);
+            return new Target(text, Arrays.copyOf(keys, count),
+                    Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+        }
+    }
+
+    /**
+     * Cached document.
+     */
+    static final class Entry {
+        private final Stamp stamp;
+        private final TokenizedDocument document;
+        private volatile Target target;
+
+        Entry(final Stamp stamp, final TokenizedDocument document) {
+            this.stamp = stamp;
+            this.document = document;
+        }
+
+        TokenizedDocument getDocument() {
+            return document;
+        }
+
+        Target getTarget() {
+            return target;
+        }
+
+        void setTarget(final Target target) {
+            this.target = target;
+        }
+    }
+
+    /**
+     * Build segment key from its translation and translated hrefs.
+     * @param translation segment translation
+     * @param hrefs translated hrefs
+     * @return segment key
+     */
+    static String segmentKey(final String translation, final Iterable<String> hrefs) {
+        StringBuilder builder = new StringBuilder(translation);
+        for (String href : hrefs) {
+            builder.append('\0');
+            builder.append(href);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get cached document if it is still valid.
+     * @param path source file path
+     * @param stamp current source file state
+     * @return cache entry or null
+     */
+    static Entry get(final String path, final Stamp stamp) {
+        SoftReference<Entry> reference;
+        synchronized (ENTRIES) {
+            reference = ENTRIES.get(path);
+        }
+        if (reference == null) {
+            return null;
+        }
+        Entry entry = reference.get();
+        if (entry == null || !entry.stamp.matches(stamp)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Get cached document of an unchanged source whatever options it was read with.
+     * @param path source file path
+     * @param file source file
+     * @return cached document or null
+     */
+    static TokenizedDocument getDocument(final String path, final File file) {
+        SoftReference<Entry> reference;
+        synchronized (ENTRIES) {
+            reference = ENTRIES.get(path);
+        }
+        if (reference == null) {
+            return null;
+        }
+        Entry entry = reference.get();
+        if (entry == null || !entry.stamp.matches(file)) {
+            return null;
+        }
+        return entry.document;
+    }
+
+    /**
+     * Put document to cache.
+     * @param path source file path
+     * @param stamp source file state
+     * @param document tokenized document
+     * @return new cache entry
+     */
+    static Entry put(final String path, final Stamp stamp, final TokenizedDocument document) {
+        Entry entry = new Entry(stamp, document);
+        synchronized (ENTRIES) {
+            ENTRIES.put(path, new SoftReference<>(entry));
+        }
+        return entry;
+    }
+
+    static void remove(final String path) {
+        synchronized (ENTRIES) {
+            ENTRIES.remove(path);
+        }
+    }
+
+    static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    private DocumentCache() {
+        // Disable instance creation.
+    }
+}
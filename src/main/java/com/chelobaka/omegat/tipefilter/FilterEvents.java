@@ -0,0 +1,119 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for filter phases.
+ * Events are created unconditionally but filled and committed only
+ * when {@link Event#shouldCommit()} says a recording wants them,
+ * so they cost nothing while no recording is running.
+ */
+final class FilterEvents {
+
+    private static final String EVENT_PREFIX = "com.chelobaka.omegat.tipefilter.";
+
+    // Only every N-th segment gets an event, segments are too many
+    static final int SEGMENT_SAMPLE_RATE = 32;
+
+    /**
+     * Common fields of all filter events.
+     */
+    @Category({"OmegaT", "tipe³ filter"})
+    @StackTrace(false)
+    abstract static class FileEvent extends Event {
+        @Label("File")
+        String path;
+
+        @Label("Size")
+        @Description("Size of processed text in characters")
+        long size;
+
+        @Label("Blocks")
+        int blockCount;
+
+        @Label("Tags")
+        int tagCount;
+
+        /**
+         * Fill common fields and commit event.
+         * @param filePath processed file path
+         * @param textSize processed text size
+         * @param blocks block count
+         * @param tags tag count
+         */
+        void commit(final String filePath, final long textSize, final int blocks,
+                    final int tags) {
+            path = filePath;
+            size = textSize;
+            blockCount = blocks;
+            tagCount = tags;
+            commit();
+        }
+    }
+
+    /**
+     * Source document reading.
+     */
+    @Name(EVENT_PREFIX + "Read")
+    @Label("tipe³ Read")
+    static final class ReadEvent extends FileEvent { }
+
+    /**
+     * Document tokenization.
+     */
+    @Name(EVENT_PREFIX + "Tokenize")
+    @Label("tipe³ Tokenize")
+    static final class TokenizeEvent extends FileEvent { }
+
+    /**
+     * Whole document translation and output.
+     */
+    @Name(EVENT_PREFIX + "Translate")
+    @Label("tipe³ Translate")
+    static final class TranslateEvent extends FileEvent { }
+
+    /**
+     * Translation of a single block group, sampled.
+     */
+    @Name(EVENT_PREFIX + "Segment")
+    @Label("tipe³ Segment")
+    @Description("Sampled translation of one block group")
+    static final class SegmentEvent extends FileEvent { }
+
+    /**
+     * Editor marker invocation.
+     */
+    @Name(EVENT_PREFIX + "Marker")
+    @Label("tipe³ Marker")
+    static final class MarkerEvent extends FileEvent { }
+
+    private FilterEvents() {
+        // Disable instance creation.
+    }
+}
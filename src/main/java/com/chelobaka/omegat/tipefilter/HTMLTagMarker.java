@@ -44,13 +44,6 @@ class HTMLTagMarker implements IMarker {
     private static final AttributeSet ATTRIBUTES = Styles
             .createAttributeSet(TAG_FONT_COLOR, null, null, null);
 
-    // Build pattern for extra HTML elements to be highlighted
-    private static final Pattern HTML_TAG_PATTERN;
-    static {
-        String patternString = "</?(" + String.join("|", Util.TAG_MAP.keySet()) + ")>";
-        HTML_TAG_PATTERN = Pattern.compile(patternString);
-    }
-
     public List<Mark> getMarksForEntry(final SourceTextEntry ste, final String sourceText,
                                        final String translationText, final boolean isActive)
             throws Exception {
@@ -59,7 +52,36 @@ class HTMLTagMarker implements IMarker {
             return null;
         }
 
-        Matcher matcher = HTML_TAG_PATTERN.matcher(translationText);
+        FilterEvents.MarkerEvent event = new FilterEvents.MarkerEvent();
+        event.begin();
+
+        List<Mark> result = findMarks(translationText);
+
+        if (event.shouldCommit()) {
+            int markCount = 0;
+            if (result != null) {
+                markCount = result.size();
+            }
+            event.commit(ste.getKey().file, translationText.length(), 0, markCount);
+        }
+
+        return result;
+    }
+
+    /**
+     * Find marks for tags in translation text.
+     * @param translationText translation text
+     * @return list of marks or null if nothing found
+     */
+    List<Mark> findMarks(final String translationText) {
+
+        // Pattern for extra HTML elements is compiled once per tag set
+        Pattern pattern = Util.getCurrentTagSet().getMarkerPattern();
+        if (pattern == null) {
+            return null;
+        }
+
+        Matcher matcher = pattern.matcher(translationText);
         if (!matcher.find()) {
             return null;
         }
@@ -70,8 +92,7 @@ class HTMLTagMarker implements IMarker {
             Mark mark = new Mark(Mark.ENTRY_PART.TRANSLATION, matcher.start(), matcher.end());
             mark.painter = null;
             mark.attributes = ATTRIBUTES;
-            String rbName = Util.TAG_MAP.get(matcher.group(1));
-            mark.toolTipText = Util.RESOURCE_BUNDLE.getString(rbName);
+            mark.toolTipText = Util.describeTag(matcher.group(1));
             result.add(mark);
         } while (matcher.find());
 
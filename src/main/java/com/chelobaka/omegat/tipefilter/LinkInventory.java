@@ -0,0 +1,150 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.chelobaka.tipe.core.DocumentWriter;
+import com.chelobaka.tipe.core.TagSet;
+import com.chelobaka.tipe.core.TokenizedDocument;
+
+/**
+ * Inventory of anchor hrefs of tipe³ files: unique URLs, their
+ * occurrences and translations. Files are scanned in parallel, documents
+ * tokenized by the filter are reused while their sources are unchanged.
+ */
+final class LinkInventory {
+
+    /**
+     * Unique URL of the inventory.
+     */
+    static final class Link {
+        private final String url;
+        private final Set<String> files = new TreeSet<>();
+        private int occurrences;
+        private String translation;
+
+        Link(final String url) {
+            this.url = url;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        int getOccurrences() {
+            return occurrences;
+        }
+
+        Set<String> getFiles() {
+            return Collections.unmodifiableSet(files);
+        }
+
+        String getTranslation() {
+            return translation;
+        }
+
+        boolean isTranslated() {
+            return translation != null && !translation.equals(url);
+        }
+    }
+
+    private LinkInventory() {
+        // Disable instance creation.
+    }
+
+    /**
+     * Build inventory of files.
+     * @param files source files
+     * @param tagSet tag set to tokenize files not in the document cache
+     * @param encoding encoding to read files not in the document cache,
+     *                 null for the platform default
+     * @param translations URL to translation or null if not translated
+     * @return links sorted by occurrences, most used first, then by URL
+     * @throws IOException on file read error
+     */
+    static List<Link> scan(final List<File> files, final TagSet tagSet, final String encoding,
+                           final Function<String, String> translations) throws IOException {
+        Map<String, Link> links = new ConcurrentHashMap<>();
+        try {
+            files.parallelStream().forEach(file -> {
+                Map<String, Integer> counts = countHrefs(file, tagSet, encoding);
+                for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                    Link link = links.computeIfAbsent(entry.getKey(), Link::new);
+                    synchronized (link) {
+                        link.occurrences += entry.getValue();
+                        link.files.add(file.getPath());
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<Link> result = new ArrayList<>(links.values());
+        for (Link link : result) {
+            link.translation = translations.apply(link.url);
+        }
+        result.sort((a, b) -> {
+            if (a.occurrences != b.occurrences) {
+                return Integer.compare(b.occurrences, a.occurrences);
+            }
+            return a.url.compareTo(b.url);
+        });
+        return result;
+    }
+
+    /**
+     * Count href occurrences of a file. An anchor used twice in a segment
+     * shares its meta tag and is one entry, so it is counted once.
+     */
+    private static Map<String, Integer> countHrefs(final File file, final TagSet tagSet,
+                                                   final String encoding) {
+        TokenizedDocument document = DocumentCache.getDocument(file.getPath(), file);
+        if (document == null) {
+            try (BufferedReader reader = new TipeFilter().createReader(file, encoding)) {
+                document = TokenizedDocument.tokenize(DocumentWriter.read(reader), tagSet);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        DocumentWriter.scan(document, (segment, firstBlock) -> {
+            for (String href : segment.getHrefs().values()) {
+                counts.merge(href, 1, Integer::sum);
+            }
+        });
+        return counts;
+    }
+}
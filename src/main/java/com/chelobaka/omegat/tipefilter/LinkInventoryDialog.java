@@ -0,0 +1,162 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.SwingWorker;
+import java.awt.BorderLayout;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.omegat.core.Core;
+import org.omegat.core.data.IProject;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.core.data.TMXEntry;
+import org.omegat.util.Log;
+
+/**
+ * Project link inventory started from the Tools menu. Unique hrefs of all
+ * tipe³ files are listed with their occurrence counts and translations.
+ */
+final class LinkInventoryDialog {
+
+    private static final int LIST_ROWS = 20;
+
+    private static boolean running;
+
+    /**
+     * Add menu item to the Tools menu.
+     */
+    static void install() {
+        JMenuItem item = new JMenuItem(Util.RESOURCE_BUNDLE.getString("LINK_INVENTORY_MENU"));
+        item.addActionListener(e -> run());
+        Core.getMainWindow().getMainMenu().getToolsMenu().add(item);
+    }
+
+    /**
+     * Scan project files in background and show results.
+     */
+    private static void run() {
+        IProject project = Core.getProject();
+        if (running || project == null || !project.isProjectLoaded()) {
+            return;
+        }
+        running = true;
+
+        // Project state is read on the event dispatch thread
+        String sourceRoot = project.getProjectProperties().getSourceRoot();
+        String hrefComment = Util.RESOURCE_BUNDLE.getString("HYPERLINK_FOR") + " ";
+        List<File> files = new ArrayList<>();
+        Map<String, String> translations = new HashMap<>();
+        for (IProject.FileInfo fi : project.getProjectFiles()) {
+            if (!Util.FILTER_NAME.equals(fi.filterFileFormatName)) {
+                continue;
+            }
+            files.add(new File(sourceRoot + fi.filePath));
+            for (SourceTextEntry ste : fi.entries) {
+                String comment = ste.getComment();
+                if (comment == null || !comment.startsWith(hrefComment)) {
+                    continue;
+                }
+                TMXEntry te = project.getTranslationInfo(ste);
+                if (te != null && te.isTranslated()) {
+                    translations.putIfAbsent(ste.getSrcText(), te.translation);
+                }
+            }
+        }
+
+        new SwingWorker<List<LinkInventory.Link>, Void>() {
+            private long elapsed;
+
+            @Override
+            protected List<LinkInventory.Link> doInBackground() throws Exception {
+                long start = System.nanoTime();
+                List<LinkInventory.Link> links = LinkInventory.scan(files,
+                        Util.getCurrentTagSet(), Util.getCurrentEncoding(), translations::get);
+                elapsed = (System.nanoTime() - start) / 1_000_000;
+                return links;
+            }
+
+            @Override
+            protected void done() {
+                running = false;
+                try {
+                    show(get(), files.size(), elapsed);
+                } catch (Exception e) {
+                    Log.log(e);
+                }
+            }
+        }.execute();
+    }
+
+    private static void show(final List<LinkInventory.Link> links, final int fileCount,
+                             final long elapsed) {
+        JDialog dialog = new JDialog(Core.getMainWindow().getApplicationFrame(),
+                Util.RESOURCE_BUNDLE.getString("LINK_INVENTORY_TITLE"), false);
+
+        int occurrences = 0;
+        int translated = 0;
+        List<String> lines = new ArrayList<>(links.size());
+        for (LinkInventory.Link link : links) {
+            occurrences += link.getOccurrences();
+            if (link.isTranslated()) {
+                translated++;
+            }
+            lines.add(describe(link));
+        }
+
+        JList<String> list = new JList<>(lines.toArray(new String[0]));
+        list.setVisibleRowCount(LIST_ROWS);
+
+        String summary = String.format(Util.RESOURCE_BUNDLE.getString("LINK_INVENTORY_SUMMARY"),
+                links.size(), occurrences, fileCount, translated, elapsed);
+        dialog.getContentPane().add(new JLabel(summary), BorderLayout.NORTH);
+        dialog.getContentPane().add(new JScrollPane(list), BorderLayout.CENTER);
+        dialog.pack();
+        dialog.setLocationRelativeTo(dialog.getParent());
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Describe link for the list.
+     * @param link link
+     * @return human readable line
+     */
+    static String describe(final LinkInventory.Link link) {
+        String translation = Util.RESOURCE_BUNDLE.getString("LINK_UNTRANSLATED");
+        if (link.isTranslated()) {
+            translation = "→ " + link.getTranslation();
+        }
+        return String.format(Util.RESOURCE_BUNDLE.getString("LINK_INVENTORY_LINE"),
+                link.getOccurrences(), link.getUrl(), link.getFiles().size(), translation);
+    }
+
+    private LinkInventoryDialog() {
+    }
+}
@@ -0,0 +1,133 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.Window;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.chelobaka.tipe.core.TagSet;
+
+/**
+ * Filter options dialog.
+ */
+final class OptionsDialog {
+
+    private static final int TEXT_COLUMNS = 40;
+    private static final int GAP = 4;
+
+    // Text options with their label resource strings
+    private static final String[][] TEXT_OPTIONS = {
+        {TagSet.OPTION_FORMATTING_TAGS, "OPTION_FORMATTING_TAGS"},
+        {TagSet.OPTION_BLOCK_TAGS, "OPTION_BLOCK_TAGS"},
+        {TagSet.OPTION_MARKER_TAGS, "OPTION_MARKER_TAGS"}
+    };
+
+    /**
+     * Show options dialog.
+     * @param parent parent window
+     * @param config current options
+     * @return new options or null if dialog was cancelled
+     */
+    static Map<String, String> show(final Window parent, final Map<String, String> config) {
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(GAP, GAP, GAP, GAP);
+        c.anchor = GridBagConstraints.WEST;
+        c.gridy = 0;
+
+        Map<String, JTextField> textFields = new LinkedHashMap<>();
+        for (String[] option : TEXT_OPTIONS) {
+            String value = config.get(option[0]);
+            if (value == null || value.trim().isEmpty()) {
+                value = TagSet.defaultOptionValue(option[0]);
+            }
+            JTextField field = new JTextField(value, TEXT_COLUMNS);
+            addRow(panel, c, new JLabel(Util.RESOURCE_BUNDLE.getString(option[1])), field);
+            textFields.put(option[0], field);
+        }
+
+        c.gridx = 0;
+        c.gridwidth = 2;
+        panel.add(new JLabel(Util.RESOURCE_BUNDLE.getString("OPTIONS_TAGS_HINT")), c);
+        c.gridy++;
+
+        String markdownValue = config.get(TagSet.OPTION_MARKDOWN);
+        if (markdownValue == null) {
+            markdownValue = TagSet.defaultOptionValue(TagSet.OPTION_MARKDOWN);
+        }
+        JCheckBox markdown = new JCheckBox(Util.RESOURCE_BUNDLE.getString("OPTION_MARKDOWN"),
+                Boolean.parseBoolean(markdownValue));
+        panel.add(markdown, c);
+        c.gridy++;
+
+        JCheckBox dedupeHrefs = new JCheckBox(
+                Util.RESOURCE_BUNDLE.getString("OPTION_DEDUPE_HREFS"),
+                Boolean.parseBoolean(config.get(TipeFilter.OPTION_DEDUPE_HREFS)));
+        panel.add(dedupeHrefs, c);
+        c.gridy++;
+
+        JCheckBox coalesce = new JCheckBox(Util.RESOURCE_BUNDLE.getString("OPTION_COALESCE"),
+                Boolean.parseBoolean(config.get(TagSet.OPTION_COALESCE)));
+        panel.add(coalesce, c);
+
+        int answer = JOptionPane.showConfirmDialog(parent, panel,
+                Util.RESOURCE_BUNDLE.getString("OPTIONS_TITLE"),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (answer != JOptionPane.OK_OPTION) {
+            return null;
+        }
+
+        Map<String, String> result = new TreeMap<>(config);
+        for (Map.Entry<String, JTextField> entry : textFields.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getText().trim());
+        }
+        result.put(TagSet.OPTION_MARKDOWN, String.valueOf(markdown.isSelected()));
+        result.put(TipeFilter.OPTION_DEDUPE_HREFS, String.valueOf(dedupeHrefs.isSelected()));
+        result.put(TagSet.OPTION_COALESCE, String.valueOf(coalesce.isSelected()));
+        return result;
+    }
+
+    private static void addRow(final JPanel panel, final GridBagConstraints c,
+                               final JLabel label, final JComponent component) {
+        c.gridx = 0;
+        c.gridwidth = 1;
+        panel.add(label, c);
+        c.gridx = 1;
+        panel.add(component, c);
+        c.gridy++;
+    }
+
+    private OptionsDialog() {
+        // Disable instance creation.
+    }
+}
@@ -30,7 +30,6 @@ import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.text.JTextComponent;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -118,10 +117,10 @@ public class PopupMenuConstructor implements IPopupMenuConstructor {
             pluginSubMenu.addSeparator();
         }
 
-        for (Map.Entry<String, String> entry : Util.TAG_MAP.entrySet()) {
+        for (String tagName : Util.getCurrentTagSet().getMarkerTags()) {
             JMenuItem item = new JMenuItem();
-            item.setText(Util.RESOURCE_BUNDLE.getString(entry.getValue()));
-            String insertion = createExtraTag(entry.getKey());
+            item.setText(Util.describeTag(tagName));
+            String insertion = createExtraTag(tagName);
             item.addActionListener(e -> Core.getEditor().insertText(insertion));
             pluginSubMenu.add(item);
         }
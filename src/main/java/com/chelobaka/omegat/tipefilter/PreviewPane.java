@@ -0,0 +1,213 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JEditorPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.Document;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+
+import org.omegat.core.Core;
+import org.omegat.core.CoreEvents;
+import org.omegat.core.data.IProject;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.core.events.IEntryEventListener;
+import org.omegat.core.events.IProjectEventListener;
+import org.omegat.gui.main.DockableScrollPane;
+import org.omegat.util.Log;
+
+/**
+ * Pane showing the active entry translation with HTML tags restored.
+ * The editor is polled for translation changes on the EDT, which costs one
+ * string comparison per tick; restoring and parsing HTML runs on a
+ * background thread and only for entries whose translation changed.
+ */
+final class PreviewPane extends JEditorPane {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String PANE_KEY = "TIPE_PREVIEW";
+
+    // Editor polling interval, ms
+    private static final int POLL_INTERVAL = Integer.getInteger("tipe.preview.poll", 250);
+
+    private final transient HTMLEditorKit kit = new HTMLEditorKit();
+
+    private final transient PreviewRenderer renderer = new PreviewRenderer();
+
+    private final transient ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tipe³ preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Incremented by every request, stale renderings are dropped
+    private final AtomicLong generation = new AtomicLong();
+
+    // Active entry, accessed on the EDT only
+    private transient File entryFile;
+    private transient String entrySource;
+    private int entryOccurrence;
+    private transient String entryKey;
+    private transient Map<String, String> hrefTranslations;
+    private transient String shownTranslation;
+
+    private PreviewPane() {
+        setEditable(false);
+        setEditorKit(kit);
+    }
+
+    /**
+     * Add preview pane to the main window and start following the editor.
+     */
+    static void install() {
+        PreviewPane pane = new PreviewPane();
+        Core.getMainWindow().addDockable(new DockableScrollPane(PANE_KEY,
+                Util.RESOURCE_BUNDLE.getString("PREVIEW_TITLE"), pane, true));
+
+        CoreEvents.registerEntryEventListener(new IEntryEventListener() {
+            @Override
+            public void onNewFile(final String activeFileName) {
+            }
+
+            @Override
+            public void onEntryActivated(final SourceTextEntry newEntry) {
+                pane.activate(newEntry);
+            }
+        });
+        CoreEvents.registerProjectChangeListener(type -> {
+            if (type == IProjectEventListener.PROJECT_CHANGE_TYPE.CLOSE
+                    || type == IProjectEventListener.PROJECT_CHANGE_TYPE.LOAD) {
+                pane.executor.execute(pane.renderer::clear);
+                pane.activate(null);
+            }
+        });
+        new Timer(POLL_INTERVAL, e -> pane.update()).start();
+        pane.activate(Core.getEditor().getCurrentEntry());
+    }
+
+    /**
+     * Remember active entry and find which of the same source entries it is.
+     * @param entry active entry or null
+     */
+    private void activate(final SourceTextEntry entry) {
+        entryKey = null;
+        shownTranslation = null;
+        generation.incrementAndGet();
+        setText("");
+        if (entry == null || !Util.isTipeFile()) {
+            return;
+        }
+
+        String fileName = entry.getKey().file;
+        IProject project = Core.getProject();
+        int occurrence = 0;
+        for (IProject.FileInfo fi : project.getProjectFiles()) {
+            if (!fi.filePath.equals(fileName)) {
+                continue;
+            }
+            List<SourceTextEntry> entries = fi.entries;
+            for (SourceTextEntry other : entries) {
+                if (other == entry) {
+                    break;
+                }
+                if (other.getSrcText().equals(entry.getSrcText())) {
+                    occurrence++;
+                }
+            }
+        }
+
+        entryFile = new File(project.getProjectProperties().getSourceRoot() + fileName);
+        entrySource = entry.getSrcText();
+        entryOccurrence = occurrence;
+        entryKey = PreviewRenderer.entryKey(entryFile.getPath(), entrySource, occurrence);
+        // Href entries may be translated in other files
+        hrefTranslations = Util.collectHrefTranslations(project);
+        update();
+    }
+
+    /**
+     * Show current translation of the active entry if it changed.
+     */
+    private void update() {
+        if (entryKey == null || !isShowing()) {
+            return;
+        }
+        String translation = Core.getEditor().getCurrentTranslation();
+        if (translation == null || translation.isEmpty()) {
+            translation = entrySource;
+        }
+        if (Objects.equals(translation, shownTranslation)) {
+            return;
+        }
+        shownTranslation = translation;
+
+        long request = generation.incrementAndGet();
+        File file = entryFile;
+        String source = entrySource;
+        int occurrence = entryOccurrence;
+        Map<String, String> hrefs = hrefTranslations;
+        String text = translation;
+        executor.execute(() -> {
+            if (generation.get() != request) {
+                // Newer request is queued
+                return;
+            }
+            try {
+                String html = renderer.render(file, source, occurrence, text, hrefs);
+                if (html == null) {
+                    html = "";
+                }
+                Document document = parse(html);
+                SwingUtilities.invokeLater(() -> {
+                    if (generation.get() == request) {
+                        setDocument(document);
+                    }
+                });
+            } catch (Exception e) {
+                Log.log(e);
+            }
+        });
+    }
+
+    /**
+     * Build HTML document. The document is not attached to any component yet,
+     * so it may be built outside of the EDT.
+     */
+    private Document parse(final String html) throws Exception {
+        HTMLDocument document = (HTMLDocument) kit.createDefaultDocument();
+        document.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        kit.read(new StringReader(html), document, 0);
+        return document;
+    }
+}
@@ -0,0 +1,185 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.chelobaka.tipe.core.DocumentWriter;
+import com.chelobaka.tipe.core.Segment;
+import com.chelobaka.tipe.core.TagSet;
+import com.chelobaka.tipe.core.TokenizedDocument;
+
+/**
+ * Restores HTML of entry translations for the preview pane.
+ * Renderings are cached per entry and reused while the translation and
+ * the source document stay the same.
+ */
+final class PreviewRenderer {
+
+    // Maximum number of cached renderings
+    private static final int MAX_ENTRIES = Integer.getInteger("tipe.preview.entries", 256);
+
+    private final Map<String, Rendering> renderings =
+            new LinkedHashMap<String, Rendering>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Rendering> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Document of the last previewed file
+    private String documentPath;
+    private TokenizedDocument document;
+    private DocumentCache.Stamp documentStamp;
+    private Map<String, List<Segment>> segmentsBySource;
+
+    /**
+     * Rendered translation of an entry.
+     */
+    private static final class Rendering {
+        private final TokenizedDocument document;
+        private final String translation;
+        private final Map<String, String> hrefs;
+        private final String html;
+
+        Rendering(final TokenizedDocument document, final String translation,
+                  final Map<String, String> hrefs, final String html) {
+            this.document = document;
+            this.translation = translation;
+            this.hrefs = hrefs;
+            this.html = html;
+        }
+    }
+
+    /**
+     * Build entry key.
+     * @param path source file path
+     * @param source entry source
+     * @param occurrence number of entries with the same source before this one in the file
+     * @return entry key
+     */
+    static String entryKey(final String path, final String source, final int occurrence) {
+        return path + '\0' + occurrence + '\0' + source;
+    }
+
+    private String getCached(final String key, final String translation,
+                             final Map<String, String> hrefs) {
+        Rendering rendering = renderings.get(key);
+        if (rendering == null || rendering.document != document
+                || !rendering.translation.equals(translation)
+                || !rendering.hrefs.equals(hrefs)) {
+            return null;
+        }
+        return rendering.html;
+    }
+
+    /**
+     * Render translation of an entry.
+     * @param file source file
+     * @param source entry source
+     * @param occurrence number of entries with the same source before this one in the file
+     * @param translation translation with meta tags
+     * @param hrefTranslations translations of href entries, untranslated ones are missing
+     * @return HTML or null if the entry is not found in the source document
+     * @throws IOException on source read error
+     */
+    synchronized String render(final File file, final String source, final int occurrence,
+                               final String translation,
+                               final Map<String, String> hrefTranslations) throws IOException {
+        String path = file.getPath();
+        loadDocument(path, file);
+
+        List<Segment> segments = segmentsBySource.get(source);
+        if (segments == null) {
+            return null;
+        }
+        Segment segment = segments.get(Math.min(occurrence, segments.size() - 1));
+
+        // Hrefs are translated like in the target
+        Map<String, String> translatedHrefs = new LinkedHashMap<>();
+        for (String href : segment.getHrefs().values()) {
+            translatedHrefs.putIfAbsent(href, hrefTranslations.getOrDefault(href, href));
+        }
+
+        String key = entryKey(path, source, occurrence);
+        String html = getCached(key, translation, translatedHrefs);
+        if (html != null) {
+            return html;
+        }
+        html = segment.restore(translation, translatedHrefs);
+        renderings.put(key, new Rendering(document, translation, translatedHrefs, html));
+        return html;
+    }
+
+    /**
+     * Make the document of a file current. The document tokenized by the
+     * filter is used when it is still valid, otherwise the file is read again.
+     */
+    private void loadDocument(final String path, final File file) throws IOException {
+        TokenizedDocument cached = DocumentCache.getDocument(path, file);
+        if (cached == null && path.equals(documentPath) && documentStamp != null
+                && documentStamp.matches(file)) {
+            cached = document;
+        }
+        if (cached != null && cached == document) {
+            return;
+        }
+
+        DocumentCache.Stamp stamp = null;
+        if (cached == null) {
+            // Read the file the way the filter did
+            String encoding = Util.getCurrentEncoding();
+            TagSet tagSet = Util.getCurrentTagSet();
+            stamp = new DocumentCache.Stamp(file, encoding, tagSet);
+            try (BufferedReader reader = new TipeFilter().createReader(file, encoding)) {
+                cached = TokenizedDocument.tokenize(DocumentWriter.read(reader), tagSet);
+            }
+        }
+
+        Map<String, List<Segment>> segments = new HashMap<>();
+        DocumentWriter.scan(cached, (segment, firstBlock) -> segments
+                .computeIfAbsent(segment.getSource(), s -> new ArrayList<>()).add(segment));
+
+        documentPath = path;
+        document = cached;
+        documentStamp = stamp;
+        segmentsBySource = segments;
+    }
+
+    /**
+     * Forget all renderings and documents.
+     */
+    synchronized void clear() {
+        renderings.clear();
+        documentPath = null;
+        document = null;
+        documentStamp = null;
+        segmentsBySource = null;
+    }
+}
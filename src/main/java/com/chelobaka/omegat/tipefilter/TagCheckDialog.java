@@ -0,0 +1,151 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.SwingWorker;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import org.omegat.core.Core;
+import org.omegat.util.Log;
+
+/**
+ * Project meta tag check started from the Tools menu. Problems are listed
+ * in a dialog; double click on a problem opens its entry in the editor.
+ */
+final class TagCheckDialog {
+
+    private static final int LIST_ROWS = 20;
+
+    private static final int MOUSE_DOUBLE_CLICK = 2;
+
+    // Keeps results between runs of the same session
+    private static final TagChecker CHECKER = new TagChecker();
+
+    private static boolean running;
+
+    /**
+     * Add menu item to the Tools menu.
+     */
+    static void install() {
+        JMenuItem item = new JMenuItem(Util.RESOURCE_BUNDLE.getString("TAG_CHECK_MENU"));
+        item.addActionListener(e -> run());
+        Core.getMainWindow().getMainMenu().getToolsMenu().add(item);
+    }
+
+    /**
+     * Check project in background and show results.
+     */
+    private static void run() {
+        if (running) {
+            return;
+        }
+        running = true;
+        List<TagChecker.Item> items = TagChecker.collectProjectItems();
+        new SwingWorker<List<TagChecker.Issue>, Void>() {
+            private long elapsed;
+
+            @Override
+            protected List<TagChecker.Issue> doInBackground() {
+                long start = System.nanoTime();
+                List<TagChecker.Issue> issues;
+                synchronized (CHECKER) {
+                    issues = CHECKER.check(items);
+                }
+                elapsed = (System.nanoTime() - start) / 1_000_000;
+                return issues;
+            }
+
+            @Override
+            protected void done() {
+                running = false;
+                try {
+                    show(get(), items.size(), CHECKER.getLastChecked(), elapsed);
+                } catch (Exception e) {
+                    Log.log(e);
+                }
+            }
+        }.execute();
+    }
+
+    private static void show(final List<TagChecker.Issue> issues, final int entryCount,
+                             final int checkedCount, final long elapsed) {
+        JDialog dialog = new JDialog(Core.getMainWindow().getApplicationFrame(),
+                Util.RESOURCE_BUNDLE.getString("TAG_CHECK_TITLE"), false);
+
+        JList<TagChecker.Issue> list = new JList<>(issues.toArray(new TagChecker.Issue[0]));
+        list.setVisibleRowCount(LIST_ROWS);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getListCellRendererComponent(final JList<?> l, final Object value,
+                                                          final int index,
+                                                          final boolean isSelected,
+                                                          final boolean cellHasFocus) {
+                return super.getListCellRendererComponent(l, describe((TagChecker.Issue) value),
+                        index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(final MouseEvent event) {
+                TagChecker.Issue issue = list.getSelectedValue();
+                if (event.getClickCount() == MOUSE_DOUBLE_CLICK && issue != null) {
+                    Core.getEditor().gotoEntry(issue.getItem().getEntryNum());
+                }
+            }
+        });
+
+        String summary = String.format(Util.RESOURCE_BUNDLE.getString("TAG_CHECK_SUMMARY"),
+                issues.size(), entryCount, checkedCount, elapsed);
+        dialog.getContentPane().add(new JLabel(summary), BorderLayout.NORTH);
+        dialog.getContentPane().add(new JScrollPane(list), BorderLayout.CENTER);
+        dialog.pack();
+        dialog.setLocationRelativeTo(dialog.getParent());
+        dialog.setVisible(true);
+    }
+
+    /**
+     * Describe problem for the list.
+     * @param issue problem
+     * @return human readable line
+     */
+    static String describe(final TagChecker.Issue issue) {
+        String problem = String.format(Util.RESOURCE_BUNDLE.getString(
+                "PROBLEM_" + issue.getProblem().getType().name()), issue.getProblem().getTag());
+        return String.format("#%d %s: %s", issue.getItem().getEntryNum(),
+                issue.getItem().getFile(), problem);
+    }
+
+    private TagCheckDialog() {
+    }
+}
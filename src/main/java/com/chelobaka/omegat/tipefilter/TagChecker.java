@@ -0,0 +1,203 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.omegat.core.Core;
+import org.omegat.core.data.IProject;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.core.data.TMXEntry;
+
+import com.chelobaka.tipe.core.MetaTagValidator;
+
+/**
+ * Checks meta tags of tipe³ entries. Results are kept between runs and
+ * only entries whose translation changed since are checked again; those
+ * are checked in parallel.
+ */
+final class TagChecker {
+
+    private final Map<String, Checked> results = new ConcurrentHashMap<>();
+
+    // Number of entries checked by the last run
+    private int lastChecked;
+
+    /**
+     * Entry to check.
+     */
+    static final class Item {
+        private final int entryNum;
+        private final String file;
+        private final String source;
+        private final String translation;
+        private final boolean href;
+        private final String key;
+
+        /**
+         * Create item.
+         * @param entryNum project entry number
+         * @param file source file
+         * @param source entry source
+         * @param translation entry translation or null if untranslated
+         * @param href whether entry is href of an anchor tag
+         */
+        Item(final int entryNum, final String file, final String source,
+             final String translation, final boolean href) {
+            this.entryNum = entryNum;
+            this.file = file;
+            this.source = source;
+            this.translation = translation;
+            this.href = href;
+            key = entryNum + "\0" + source;
+        }
+
+        int getEntryNum() {
+            return entryNum;
+        }
+
+        String getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * Problem found in an entry.
+     */
+    static final class Issue {
+        private final Item item;
+        private final MetaTagValidator.Problem problem;
+
+        Issue(final Item item, final MetaTagValidator.Problem problem) {
+            this.item = item;
+            this.problem = problem;
+        }
+
+        Item getItem() {
+            return item;
+        }
+
+        MetaTagValidator.Problem getProblem() {
+            return problem;
+        }
+    }
+
+    /**
+     * Check result of an entry translation.
+     */
+    private static final class Checked {
+        private final String translation;
+        private final List<MetaTagValidator.Problem> problems;
+
+        Checked(final String translation, final List<MetaTagValidator.Problem> problems) {
+            this.translation = translation;
+            this.problems = problems;
+        }
+    }
+
+    /**
+     * Collect tipe³ entries of the loaded project with their current translations.
+     * @return entries in project order
+     */
+    static List<Item> collectProjectItems() {
+        IProject project = Core.getProject();
+        List<Item> items = new ArrayList<>();
+        if (project == null || !project.isProjectLoaded()) {
+            return items;
+        }
+        String hrefComment = Util.RESOURCE_BUNDLE.getString("HYPERLINK_FOR") + " ";
+        for (IProject.FileInfo fi : project.getProjectFiles()) {
+            if (!Util.FILTER_NAME.equals(fi.filterFileFormatName)) {
+                continue;
+            }
+            for (SourceTextEntry ste : fi.entries) {
+                TMXEntry te = project.getTranslationInfo(ste);
+                String translation = null;
+                if (te != null && te.isTranslated()) {
+                    translation = te.translation;
+                }
+                String comment = ste.getComment();
+                boolean href = comment != null && comment.startsWith(hrefComment);
+                items.add(new Item(ste.entryNum(), fi.filePath, ste.getSrcText(),
+                        translation, href));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Check entries. Entries checked by previous runs with the same
+     * translation are not checked again.
+     * @param items all entries to report on
+     * @return problems in entry order
+     */
+    List<Issue> check(final List<Item> items) {
+        List<Item> stale = items.stream()
+                .filter(item -> {
+                    Checked checked = results.get(item.key);
+                    return checked == null
+                            || !Objects.equals(checked.translation, item.translation);
+                })
+                .collect(Collectors.toList());
+
+        stale.parallelStream().forEach(item ->
+                results.put(item.key, new Checked(item.translation, validate(item))));
+        lastChecked = stale.size();
+
+        // Forget entries gone from the project
+        Set<String> keys = new HashSet<>();
+        for (Item item : items) {
+            keys.add(item.key);
+        }
+        results.keySet().retainAll(keys);
+
+        List<Issue> issues = new ArrayList<>();
+        for (Item item : items) {
+            for (MetaTagValidator.Problem problem : results.get(item.key).problems) {
+                issues.add(new Issue(item, problem));
+            }
+        }
+        return issues;
+    }
+
+    int getLastChecked() {
+        return lastChecked;
+    }
+
+    private static List<MetaTagValidator.Problem> validate(final Item item) {
+        if (item.translation == null) {
+            return Collections.emptyList();
+        }
+        if (item.href) {
+            return MetaTagValidator.validateHref(item.translation);
+        }
+        return MetaTagValidator.validate(item.source, item.translation);
+    }
+}
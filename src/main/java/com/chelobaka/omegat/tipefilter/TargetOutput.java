@@ -0,0 +1,142 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Output stream of a target file which hashes content while it is written
+ * and touches the target only if content differs from the previous run.
+ * Content is kept in memory and spilled to a temporary file next to the
+ * target once it grows over {@link #SPILL_THRESHOLD}.
+ */
+final class TargetOutput extends OutputStream {
+
+    static final int SPILL_THRESHOLD = Integer.getInteger("tipe.spill.threshold", 1 << 20);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File target;
+    private final MessageDigest digest;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private File spillFile;
+    private OutputStream spill;
+    private long length;
+
+    TargetOutput(final File target) {
+        this.target = target;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        digest.update(b, off, len);
+        length += len;
+        if (spill == null && buffer.size() + len > SPILL_THRESHOLD) {
+            File dir = target.getAbsoluteFile().getParentFile();
+            spillFile = File.createTempFile("tipe", ".tmp", dir);
+            spill = new BufferedOutputStream(Files.newOutputStream(spillFile.toPath()));
+            buffer.writeTo(spill);
+            buffer = null;
+        }
+        if (spill != null) {
+            spill.write(b, off, len);
+        } else {
+            buffer.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * Move written content to target file unless the target already holds it.
+     * Stream must be closed before.
+     * @param store digest store
+     * @return true if target file was written
+     * @throws IOException on write error
+     */
+    boolean commit(final DigestStore store) throws IOException {
+        String hash = toHex(digest.digest());
+        if (store.isCurrent(target, hash, length)) {
+            discard();
+            return false;
+        }
+        if (spillFile != null) {
+            Files.move(spillFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            spillFile = null;
+        } else {
+            try (OutputStream out = Files.newOutputStream(target.toPath())) {
+                buffer.writeTo(out);
+            }
+        }
+        store.put(target, hash, length);
+        return true;
+    }
+
+    /**
+     * Drop written content.
+     */
+    void discard() {
+        if (spillFile != null) {
+            try {
+                close();
+            } catch (IOException e) {
+                // Temporary file is deleted anyway
+            }
+            spillFile.delete();
+            spillFile = null;
+        }
+        buffer = null;
+    }
+
+    private static String toHex(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
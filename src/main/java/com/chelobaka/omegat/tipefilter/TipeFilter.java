@@ -21,33 +21,49 @@
 
 package com.chelobaka.omegat.tipefilter;
 
+import java.awt.Window;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.omegat.core.Core;
 
 import org.omegat.core.CoreEvents;
+import org.omegat.core.data.IProject;
 import org.omegat.core.events.IApplicationEventListener;
+import org.omegat.core.events.IProjectEventListener;
 import org.omegat.filters2.AbstractFilter;
 import org.omegat.filters2.FilterContext;
+import org.omegat.filters2.ITranslateCallback;
 import org.omegat.filters2.Instance;
-import org.omegat.util.LinebreakPreservingReader;
+import org.omegat.filters2.TranslationException;
 import org.omegat.util.Log;
 
+import com.chelobaka.tipe.core.DocumentTree;
+import com.chelobaka.tipe.core.DocumentWriter;
+import com.chelobaka.tipe.core.Segment;
+import com.chelobaka.tipe.core.SegmentAligner;
+import com.chelobaka.tipe.core.TagSet;
+import com.chelobaka.tipe.core.TokenizedDocument;
+
 /**
  * tipe³ web authoring format filter for OmegaT.
  *
@@ -55,584 +71,261 @@ import org.omegat.util.Log;
  */
 public class TipeFilter extends AbstractFilter {
 
-    private static final Pattern BLANK_PATTERN = Pattern.compile("^[\\s\\n]+$");
-
-    private static final Pattern ATOMIC_PATTERN =
-            Pattern.compile("^\\s+|\\{\\{IMG.+?}}\\s*|\\n\\s*");
-
-    private static final Pattern HREF_PATTERN = Pattern.compile("href=\"(.+?)\"");
-
-    // Text formatting HTML tags
-    private static final String[] FORMATTING_TAG_NAMES = {
-        "strong",
-        "em",
-        "a",
-        "strike",
-        "sub",
-        "sup",
-        "span"
-    };
-
-    // Block level HTML tags
-    private static final String[] BLOCK_TAG_NAMES = {
-        "div",
-        "iframe",
-        "ul",
-        "ol",
-        "li",
-        "p",
-        "blockquote",
-        "table",
-        "tbody",
-        "tr",
-        "td",
-        "th"
-    };
-
-    private static final String[][] SPECIAL_HTML_CHARACTERS = {
-        {"&amp;", "&"},
-        {"&nbsp;", " "},
-        {"&quot;", "\""}
-    };
+    /** Option to emit each distinct href once per project load. */
+    static final String OPTION_DEDUPE_HREFS = "dedupeHrefs";
 
-    /**
-     * Block type enum.
-     */
-    private enum BlockType {
-        ATOMIC,  // Indivisible block without payload
-        TAG,     // Formatting HTML tag
-        PAYLOAD  // Text
-    }
+    private static final int GZIP_BUFFER_SIZE = 65536;
 
-    /**
-     * Tag types enum.
-     */
-    private enum TagType {
-        OPENING,
-        CLOSING,
-        ANY      // This one for making pattern to match both types
-    }
+    /* Private fields */
 
-    /**
-     * Helper class for block objects.
-     */
-    class Block implements Comparable<Block> {
-        private final int start;
-        private final int end;
-        private final BlockType type;
-
-        Block(final BlockType type, final int start, final int end) {
-            this.type = type;
-            this.start = start;
-            this.end = end;
-        }
+    private TokenizedDocument document; // current document
 
-        int getStart() {
-            return start;
-        }
+    // Cache state of current file
+    private DocumentCache.Stamp stamp;
+    private DocumentCache.Entry cacheEntry;
+    private DocumentCache.Target previousTarget;
+    private DocumentCache.TargetBuilder targetBuilder;
+    private int segmentIndex;
 
-        int getEnd() {
-            return end;
-        }
+    private BufferedWriter fileWriter;
 
-        BlockType getType() {
-            return type;
-        }
+    // Target of current translate pass
+    private boolean translating;
+    private int translatePass;
+    private TargetOutput targetOutput;
+    private OutputStream targetStream;
+    private Charset targetCharset;
 
-        @Override
-        public int compareTo(final Block that) {
-            return Integer.compare(this.start, that.start);
-        }
-    }
+    // Emit each distinct href only once per project load
+    private boolean dedupeHrefs;
+    private String hrefFile; // normalized path of current file
+    private int hrefIndex; // href occurrence in current file
 
-    /**
-     * Helper class for HTML tag objects.
-     */
-    class HTMLTag extends Block {
-        private final String name;
-        private final TagType tagType;
-        private String metaBody;
-        // Tag comment would be sent inside entry comment to OmegaT.
-        // The purpose of this is passing HREF links to the editor.
-        private String comment;
-        private HTMLTag pair;
-
-        String getMetaBody() {
-            return metaBody;
-        }
+    // Current file path and statistics for flight recorder events
+    private String filePath;
+    private int segmentCounter;
 
-        String getName() {
-            return name;
-        }
+    /* End of private fields */
 
-        HTMLTag getPair() {
-            return pair;
-        }
+    // Set when the first tipe³ file is processed, editor helpers stay idle until then
+    private static volatile boolean activated;
 
-        boolean hasPair() {
-            return pair != null;
-        }
+    // Hrefs emitted as entries since the project was opened with their occurrences,
+    // which are the entries in both parse and translate passes, see OPTION_DEDUPE_HREFS
+    private static final Map<String, String> EMITTED_HREFS = new ConcurrentHashMap<>();
 
-        boolean hasMetaBody() {
-            return metaBody != null;
-        }
+    // Translations of emitted hrefs for their other occurrences in targets
+    private static final Map<String, String> HREF_TRANSLATIONS = new ConcurrentHashMap<>();
 
-        boolean isOpening() {
-            return tagType == TagType.OPENING;
-        }
+    // Translations of href entries in the project, collected once per target generation
+    private static volatile Map<String, String> projectHrefTranslations;
 
-        TagType getTagType() {
-            return tagType;
-        }
+    /**
+     * Translate segment.
+     * @param segment segment
+     * @param translation segment translation
+     * @param translatedHrefs original to translated href map
+     * @return Translated string
+     */
+    private String renderSegment(final Segment segment, final String translation,
+                                 final Map<String, String> translatedHrefs) {
 
-        void setMetaBody(final String metaBody) {
-            this.metaBody = metaBody;
+        FilterEvents.SegmentEvent event = null;
+        if (++segmentCounter % FilterEvents.SEGMENT_SAMPLE_RATE == 0) {
+            event = new FilterEvents.SegmentEvent();
+            event.begin();
         }
 
-        void setPair(final HTMLTag pair) {
-            this.pair = pair;
+        // Reuse previous output of this segment if its translation did not change
+        String segmentKey = null;
+        String result = null;
+        if (previousTarget != null || targetBuilder != null) {
+            segmentKey = DocumentCache.segmentKey(translation, translatedHrefs.values());
         }
-
-        String getComment() {
-            return comment;
+        if (previousTarget != null) {
+            result = previousTarget.getSegment(segmentIndex, segmentKey);
         }
 
-        void setComment(final String comment) {
-            this.comment = comment;
+        if (result == null) {
+            result = segment.restore(translation, translatedHrefs);
         }
 
-        HTMLTag(final String name, final int start, final int end, final TagType tagType) {
-            super(BlockType.TAG, start, end);
-            this.name = name;
-            this.tagType = tagType;
-            metaBody = null;
-            pair = null;
-            comment = null;
+        if (targetBuilder != null) {
+            targetBuilder.addSegment(segmentKey, result);
         }
-    }
-
-    /* Private fields */
-
-    private final Pattern blockTagPattern, oFTagPattern, cFTagPattern;
-    private String doc; // current document
+        segmentIndex++;
 
-    // Final document blocks
-    private List<Block> documentBlocks;
-
-    private BufferedWriter fileWriter;
-
-    // Structures for tag manipulations
-    private Map<String, String> metaToHtmlMap;
-    private Map<String, String> htmlToMetaMap;
-    private Map<Character, Integer> metaCounters;
-
-    /* End of private fields */
+        if (event != null && event.shouldCommit()) {
+            event.commit(filePath,
+                    document.charCount(segment.getGroupStart(), segment.getGroupEnd()),
+                    segment.getBlockCount(), segment.getTagCount());
+        }
 
-    // Register marker
-    static {
-         Core.registerMarker(new HTMLTagMarker());
+        return result;
     }
 
     /**
-     * Constructor.
+     * Translate anchor hrefs of a segment.
+     * @param segment segment
+     * @return original to translated href map
      */
-    public TipeFilter() {
-
-        // Build tag patterns
-        oFTagPattern = buildTagPattern(FORMATTING_TAG_NAMES, TagType.OPENING);
-        cFTagPattern = buildTagPattern(FORMATTING_TAG_NAMES, TagType.CLOSING);
-        blockTagPattern = buildTagPattern(BLOCK_TAG_NAMES, TagType.ANY);
-
-        // Create block container
-        documentBlocks = new ArrayList<>();
-
-        // Create structures for tag conversions
-        metaToHtmlMap = new HashMap<>();
-        htmlToMetaMap = new HashMap<>();
-        metaCounters = new HashMap<>();
+    private Map<String, String> translateHrefs(final Segment segment) {
+        Map<String, String> translatedHrefs = new LinkedHashMap<>();
+        for (Map.Entry<String, String> hrefEntry : segment.getHrefs().entrySet()) {
+            String originalHref = hrefEntry.getValue();
+            String metaTag = hrefEntry.getKey();
+            if (dedupeHrefs && !isHrefEntry(originalHref)) {
+                // Same href is an entry of the project already, its translation is shared
+                translatedHrefs.putIfAbsent(originalHref, sharedHrefTranslation(originalHref));
+                continue;
+            }
+            String translatedHref = processEntry(originalHref,
+                    String.format("%s %s",
+                            Util.RESOURCE_BUNDLE.getString("HYPERLINK_FOR"), metaTag));
+            if (dedupeHrefs && isTargetPass()) {
+                HREF_TRANSLATIONS.put(originalHref, translatedHref);
+            }
+            translatedHrefs.putIfAbsent(originalHref, translatedHref);
+        }
+        return translatedHrefs;
     }
 
     /**
-     * Build match pattern for a list of tags.
-     * @param tagList : List of tags
-     * @param type : Tag type (opening, closing, any)
-     * @return Pattern object
-     **/
-    private Pattern buildTagPattern(final String[] tagList, final TagType type) {
-        String re, prefix, suffix;
-        String separator = "|";
-
-        switch (type) {
-            case OPENING:
-                prefix = "<(";
-                suffix = ")(?:[^>])*>";
-                break;
-            case CLOSING:
-                prefix = "</(";
-                suffix = ")>";
-                break;
-            case ANY:
-                prefix = "</*(?:";
-                suffix = ")(?:[^>])*> *";
-                break;
-            default: // Should not happen
-                prefix = "";
-                suffix = "";
-        }
-
-        re = Stream.of(tagList).collect(Collectors.joining(separator, prefix, suffix));
-        return Pattern.compile(re);
+     * Check if this occurrence of href is its entry. The first occurrence
+     * of the project load is, so parse and translate passes over the same
+     * files emit the same entries.
+     * @param href href
+     * @return check result
+     */
+    private boolean isHrefEntry(final String href) {
+        String occurrence = hrefFile + '#' + hrefIndex++;
+        String entry = EMITTED_HREFS.putIfAbsent(href, occurrence);
+        return entry == null || entry.equals(occurrence);
     }
 
-    private List<HTMLTag> findDocumentHTMLTags(final Pattern pattern, final TagType tagType) {
-        List<HTMLTag> result = new ArrayList<>();
-        Matcher matcher = pattern.matcher(doc);
-        while (matcher.find()) {
-            HTMLTag tag = new HTMLTag(
-                    matcher.group(1),
-                    matcher.start(),
-                    matcher.end(),
-                    tagType);
-            result.add(tag);
+    /**
+     * Get translation of href entry for its other occurrences. The entry
+     * is translated first when the targets of all files are created. Target
+     * of a single file looks it up in the project.
+     * @param href href
+     * @return translated href
+     */
+    private String sharedHrefTranslation(final String href) {
+        if (!isTargetPass()) {
+            // Output is not used
+            return href;
         }
-        return result;
+        return HREF_TRANSLATIONS.computeIfAbsent(href, TipeFilter::projectTranslation);
     }
 
     /**
-     * Generate meta body for tag and its pair if it exists.
-     * Orphan tags receive unique meta bodies.
-     * @param tag
+     * Find translation of an href entry in the loaded project.
+     * @param source href
+     * @return translation or the href itself
      */
-    private void generateMetaBody(final HTMLTag tag) {
-
-        // Do not overwrite meta body values
-        if (tag.hasMetaBody()) {
-            return;
-        }
-
-        String tagBody = doc.substring(tag.getStart(), tag.getEnd());
-        String metaBody = htmlToMetaMap.get(tagBody);
-
-        if (metaBody == null || !tag.hasPair()) {
-            Character metaNameChar = tag.getName().charAt(0);
-            Integer metaCounter = metaCounters.get(metaNameChar);
-
-            if (metaCounter == null) {
-                metaCounter = 1;
-            } else {
-                metaCounter += 1;
-            }
-
-            metaCounters.put(metaNameChar, metaCounter);
-            String tagFormat;
-            if (tag.isOpening()) {
-                tagFormat = "<%s%d>";
-            } else {
-                tagFormat = "</%s%d>";
+    private static String projectTranslation(final String source) {
+        Map<String, String> translations = projectHrefTranslations;
+        if (translations == null) {
+            IProject project = Core.getProject();
+            if (project == null || !project.isProjectLoaded()) {
+                return source;
             }
-            metaBody = String.format(tagFormat, metaNameChar, metaCounter);
-        }
-        tag.setMetaBody(metaBody);
-
-        // Extract href attribute for anchor tags and store it as comment
-        if (tag.getName().equals("a")) {
-            Matcher matcher = HREF_PATTERN.matcher(tagBody);
-            if (matcher.find()) {
-                tag.setComment(matcher.group(1));
-            }
-        }
-
-        metaToHtmlMap.put(metaBody, tagBody);
-        htmlToMetaMap.put(tagBody, metaBody);
-
-        // Pair tag can be only closing because of walking direction.
-        if (tag.hasPair()) {
-            HTMLTag pair = tag.getPair();
-            String pairBody = doc.substring(pair.getStart(), pair.getEnd());
-            String pairMetaBody = "</" + metaBody.substring(1);
-            pair.setMetaBody(pairMetaBody);
-            metaToHtmlMap.put(pairMetaBody, pairBody);
+            translations = Util.collectHrefTranslations(project);
+            projectHrefTranslations = translations;
         }
+        return translations.getOrDefault(source, source);
     }
 
     /**
-     * Tokenize document to atomic and formatting blocks.
-     * Create meta names for formatting tags.
+     * Fetch translations of all segments and links, then write the document.
+     * If nothing is translated and the document renders back to itself,
+     * its text is written as is without rendering segments.
+     * @throws IOException on write error
      */
-    private void tokenizeDocument() {
-
-        // Add non-HTML atomic blocks to block list
-        Matcher matcher = ATOMIC_PATTERN.matcher(doc);
-        while (matcher.find()) {
-            documentBlocks.add(new Block(BlockType.ATOMIC, matcher.start(), matcher.end()));
-        }
-
-        // Add HTML atomic blocks to block list
-        matcher = blockTagPattern.matcher(doc);
-        while (matcher.find()) {
-            documentBlocks.add(new Block(BlockType.ATOMIC, matcher.start(), matcher.end()));
-        }
-
-        // Search for formatting HTML tags
-        List<HTMLTag> allTags = findDocumentHTMLTags(oFTagPattern, TagType.OPENING);
-        allTags.addAll(findDocumentHTMLTags(cFTagPattern, TagType.CLOSING));
-        Collections.sort(allTags);
-
-        // Search for tag pairs
-        int tagDepth;
-        // Iterate to penultimate tag
-        for (int i = 0; i < allTags.size() - 1; ++i) {
-
-            HTMLTag currentTag = allTags.get(i);
-            // Skip if tag has a pair or it's a closing tag
-            if (currentTag.hasPair() || !currentTag.isOpening()) {
-                continue;
+    private void translateDocument() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        List<String> translations = new ArrayList<>();
+        List<Map<String, String>> hrefs = new ArrayList<>();
+        boolean[] untranslated = {true};
+        DocumentWriter.scan(document, (segment, firstBlock) -> {
+            String translation = processEntry(segment.getSource(), segment.getComment());
+            Map<String, String> translatedHrefs = translateHrefs(segment);
+            segments.add(segment);
+            translations.add(translation);
+            hrefs.add(translatedHrefs);
+            if (untranslated[0]) {
+                untranslated[0] = translation.equals(segment.getSource())
+                        && isIdentity(translatedHrefs);
             }
+        });
 
-            tagDepth = 1;
-            // Search pair in following tags
-            for (int j = i + 1; j < allTags.size(); ++j) {
-                HTMLTag pairCandidate = allTags.get(j);
-                // Skip tags with different name
-                if (!pairCandidate.getName().equals(currentTag.getName())) {
-                    continue;
-                }
-
-                // Calculate current depth
-                if (pairCandidate.isOpening()) {
-                    tagDepth++;
-                    continue;
-                } else {
-                    tagDepth--;
-                }
-
-                if (tagDepth == 0) {
-                    currentTag.setPair(pairCandidate);
-                    break;
-                }
+        if (untranslated[0] && document.isIdentityExact()) {
+            writeSource();
+            if (entryTranslateCallback != null && cacheEntry != null) {
+                cacheEntry.setTarget(new DocumentCache.Target(document, segments, hrefs));
             }
+            return;
         }
 
-        // Generate meta bodies for all tags
-        allTags.forEach(tag -> generateMetaBody(tag));
-
-        // Add tags to document blocks
-        documentBlocks.addAll(allTags);
-
-        // Add dummy block at the end of the document to simplify logic
-        documentBlocks.add(new Block(BlockType.ATOMIC, doc.length(), doc.length()));
-
-        // Sort blocks
-        Collections.sort(documentBlocks);
-
-        // Create cache for found blocks
-        List<Block> blockCache = new ArrayList<>();
-
-        // Now search for payload blocks before/between other blocks
-        int lastBlockEnd = 0;
-
-        for (Block block : documentBlocks) {
-            if (block.start > lastBlockEnd) {
-                blockCache.add(new Block(BlockType.PAYLOAD, lastBlockEnd, block.start));
-            }
-            lastBlockEnd = block.end;
+        // Record output for incremental target regeneration
+        if (entryTranslateCallback != null && cacheEntry != null) {
+            previousTarget = cacheEntry.getTarget();
+            targetBuilder = new DocumentCache.TargetBuilder();
         }
-
-        // Add found payload blocks to document blocks
-        documentBlocks.addAll(blockCache);
-        Collections.sort(documentBlocks);
-
-        // Remove atomic blocks (newlines) between opening and closing tags
-        int formattingDepth = 0;
-        Iterator<Block> iter = documentBlocks.iterator();
-        while (iter.hasNext()) {
-            Block block = iter.next();
-            switch (block.getType()) {
-                case TAG:
-                    TagType tt = ((HTMLTag) block).getTagType();
-                    if (tt == TagType.OPENING) {
-                        formattingDepth++;
-                    } else if (tt == TagType.CLOSING) {
-                        formattingDepth--;
-                    }
-                    break;
-                case ATOMIC:
-                    if (formattingDepth > 0 && block.end - block.start > 0) {
-                        Matcher m = BLANK_PATTERN.matcher(doc.substring(block.start, block.end));
-                        if (m.matches()) {
-                            iter.remove();
-                        }
-                    }
-            }
+        Iterator<String> translationIterator = translations.iterator();
+        Iterator<Map<String, String>> hrefIterator = hrefs.iterator();
+        DocumentWriter.write(document, this::write, segment -> renderSegment(segment,
+                translationIterator.next(), hrefIterator.next()));
+        if (targetBuilder != null) {
+            cacheEntry.setTarget(targetBuilder.build());
         }
+    }
 
-        if (formattingDepth != 0) {
-            Log.log("WARNING: Tipe³ filter detected bad HTML formatting. Check your source document");
+    private static boolean isIdentity(final Map<String, String> translatedHrefs) {
+        for (Map.Entry<String, String> hrefEntry : translatedHrefs.entrySet()) {
+            if (!hrefEntry.getKey().equals(hrefEntry.getValue())) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
-     * Translate group of blocks.
-     * @param blocks : List of blocks where at least one is payload
-     * @return Translated string
+     * Write source text of untranslated document. UTF-8 text goes to the
+     * target stream in one bulk copy without encoding it again.
+     * @throws IOException on write error
      */
-    private String translateBlocks(final List<Block> blocks) {
-
-        // Store initial bounds
-        int groupStart = blocks.get(0).getStart();
-        int groupEnd = blocks.get(blocks.size() - 1).getEnd();
-
-        // Strip margin tags
-        while (blocks.size() > 2) {
-            Block leftBlock = blocks.get(0);
-            Block rightBlock = blocks.get(blocks.size() - 1);
-            if (leftBlock.getType() != BlockType.TAG || rightBlock.getType() != BlockType.TAG) {
-                break;
-            }
-            if (((HTMLTag) leftBlock).getPair() != rightBlock) {
-                break;
+    private void writeSource() throws IOException {
+        if (targetStream != null && StandardCharsets.UTF_8.equals(targetCharset)) {
+            fileWriter.flush();
+            if (document.writeUtf8(targetStream)) {
+                return;
             }
-            // Do not strip <a> tags since they contain href used in comment
-            if (((HTMLTag) leftBlock).getName().equals("a")) {
-                break;
-            }
-
-            blocks.remove(0);
-            blocks.remove(blocks.size() - 1);
-        }
-
-        int scopeStart = blocks.get(0).getStart();
-        int scopeEnd = blocks.get(blocks.size() - 1).getEnd();
-
-        // Build result string
-        StringBuilder resultBuilder = new StringBuilder();
-
-        // Write left stripped tags
-        if (groupStart < scopeStart) {
-            resultBuilder.append(doc.substring(groupStart, scopeStart));
         }
-
-        Set<String> scopeMetaBodies = new HashSet<>();
-        StringBuilder commentBuilder = new StringBuilder();
-        Map<String, String> anchorTagHrefs = new LinkedHashMap<>();
-
-        // Build string for translation
-        StringBuilder translationBuilder = new StringBuilder();
-        for (Block block : blocks) {
-            switch (block.getType()) {
-                case TAG:
-                    HTMLTag tag = (HTMLTag) block;
-                    String metaBody = tag.getMetaBody();
-                    translationBuilder.append(metaBody);
-                    scopeMetaBodies.add(metaBody);
-                    if (tag.getComment() != null) {
-                        // Append tag name and its href to comment
-                        commentBuilder.append(tag.metaBody);
-                        commentBuilder.append(": ");
-                        commentBuilder.append(tag.getComment());
-                        commentBuilder.append("\n");
-                        // Store tag name / href pair for translation
-                        anchorTagHrefs.put(tag.metaBody, tag.getComment());
-                    }
-                    break;
-                case PAYLOAD:
-                    translationBuilder.append(doc.substring(block.getStart(), block.getEnd()));
-                    break;
-                default:
-                    // Should not happen
-            }
-        }
-
-        String translation = translationBuilder.toString();
-
-        // Substitute special HTML characters with real ones
-        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
-            translation = translation.replaceAll(subst[0], subst[1]);
-        }
-
-        // Check if we have any comments
-        String comment;
-        if (commentBuilder.length() > 0) {
-            comment = commentBuilder.toString();
-        } else {
-            comment = null;
-        }
-
-        // Fetch actual translation
-        translation = processEntry(translation, comment);
-
-        // Put back special HTML characters
-        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
-            translation = translation.replaceAll(subst[1], subst[0]);
-        }
-
-        // Put HTML tags back
-        for (String meta : scopeMetaBodies) {
-            translation = translation.replaceAll(meta, metaToHtmlMap.get(meta));
-        }
-
-        // Translate anchor hrefs and replace them in translated string
-        for (Map.Entry<String, String> hrefEntry : anchorTagHrefs.entrySet()) {
-            String originalHref = hrefEntry.getValue();
-            String metaTag = hrefEntry.getKey();
-            String translatedHref = processEntry(originalHref,
-                    String.format("%s %s",
-                            Util.RESOURCE_BUNDLE.getString("HYPERLINK_FOR"), metaTag));
-            translation = translation.replaceAll(wrapWithHref(originalHref),
-                    wrapWithHref(translatedHref));
-        }
-
-        // Append translation to result
-        resultBuilder.append(translation);
-
-        // Write right stripped tags
-        if (groupEnd > scopeEnd) {
-            resultBuilder.append(doc.substring(scopeEnd, groupEnd));
-        }
-
-        return resultBuilder.toString();
+        fileWriter.write(document.substring(0, document.length()));
     }
 
     /**
-     * Wrap URL with href attribute to avoid translation corruption due to bad URLs.
-     * @param url
-     * @return
+     * Check if this is the first of two translate passes, which only
+     * links segments and discards output.
+     * @return check result
      */
-    private static String wrapWithHref(final String url) {
-        return String.format("href=\"%s\"", url);
+    private boolean isLinkingPass() {
+        return translating && translatePass == 1 && requirePrevNextFields();
     }
 
     /**
-     * After the document was tokenized we can translate block groups with payload
-     * or directly write blocks without payload to target file.
-     * @throws IOException
+     * Check if this translate pass writes the target.
+     * @return check result
      */
-    private void translateDocument() throws IOException {
-        boolean payloadInCache = false;
-        List<Block> cache = new ArrayList<>();
-
-        for (Block block : documentBlocks) {
-            switch (block.getType()) {
-                case ATOMIC: // The last one is dummy atomic
-                    if (cache.size() > 0) {
-                        if (payloadInCache) {
-                            fileWriter.write(translateBlocks(cache));
-                        } else {
-                            int cacheStart = cache.get(0).getStart();
-                            int cacheEnd = cache.get(cache.size() - 1).getEnd();
-                            fileWriter.write(doc.substring(cacheStart, cacheEnd));
-                        }
-                        payloadInCache = false;
-                        cache.clear();
-                    }
-                    fileWriter.write(doc.substring(block.start, block.end));
-                    break;
-                case PAYLOAD:
-                    payloadInCache = true; // No break here
-                case TAG:
-                    cache.add(block);
-                default:
-            }
+    private boolean isTargetPass() {
+        return entryTranslateCallback != null && !isLinkingPass();
+    }
+
+    private void write(final String text) throws IOException {
+        fileWriter.write(text);
+        if (targetBuilder != null) {
+            targetBuilder.append(text);
         }
     }
 
@@ -645,19 +338,83 @@ public class TipeFilter extends AbstractFilter {
             public void onApplicationStartup() {
                 Core.getEditor().registerPopupMenuConstructors(MENU_PRIORITY,
                         new PopupMenuConstructor());
+                CoreEvents.registerProjectChangeListener(generateIProjectEventListener());
             }
 
             @Override
             public void onApplicationShutdown() {
+                DigestStore.saveAll();
+            }
+        };
+    }
+
+    /**
+     * Listener adding preview pane and tag check to the main window
+     * once a project with tipe³ files is loaded. It also saves target
+     * digests after target generation.
+     */
+    private static IProjectEventListener generateIProjectEventListener() {
+        return new IProjectEventListener() {
+
+            private boolean installed;
+
+            @Override
+            public void onProjectChanged(final PROJECT_CHANGE_TYPE eventType) {
+                if (eventType == PROJECT_CHANGE_TYPE.COMPILE
+                        || eventType == PROJECT_CHANGE_TYPE.SAVE
+                        || eventType == PROJECT_CHANGE_TYPE.CLOSE) {
+                    // Target digests are written once per target generation
+                    DigestStore.saveAll();
+                }
+                if (eventType == PROJECT_CHANGE_TYPE.COMPILE) {
+                    resetHrefTranslations();
+                }
+                if (eventType == PROJECT_CHANGE_TYPE.CLOSE) {
+                    // Reload closes the project first, so hrefs are emitted again
+                    resetEmittedHrefs();
+                }
+                if (eventType != PROJECT_CHANGE_TYPE.LOAD || installed || !activated) {
+                    return;
+                }
+                installed = true;
+                PreviewPane.install();
+                TagCheckDialog.install();
+                LinkInventoryDialog.install();
             }
         };
     }
 
+    /**
+     * Forget hrefs emitted by the current project load.
+     */
+    static void resetEmittedHrefs() {
+        EMITTED_HREFS.clear();
+        resetHrefTranslations();
+    }
+
+    /**
+     * Forget href translations of the last target generation, they may
+     * change before the next one.
+     */
+    static void resetHrefTranslations() {
+        HREF_TRANSLATIONS.clear();
+        projectHrefTranslations = null;
+    }
+
+    /**
+     * Check if the filter processed a tipe³ file since startup.
+     * @return check result
+     */
+    static boolean isActivated() {
+        return activated;
+    }
+
     /**
      * Plugin loader.
      */
     public static void loadPlugins() {
         Core.registerFilterClass(TipeFilter.class);
+        Core.registerMarker(new DeferredMarker());
         CoreEvents.registerApplicationEventListener(generateIApplicationEventListener());
     }
 
@@ -671,6 +428,17 @@ public class TipeFilter extends AbstractFilter {
         return Util.FILTER_NAME;
     }
 
+    @Override
+    public boolean hasOptions() {
+        return true;
+    }
+
+    @Override
+    public Map<String, String> changeOptions(final Window parent,
+                                             final Map<String, String> config) {
+        return OptionsDialog.show(parent, config);
+    }
+
     @Override
     public boolean isSourceEncodingVariable() {
         return true;
@@ -685,6 +453,7 @@ public class TipeFilter extends AbstractFilter {
     public Instance[] getDefaultInstances() {
         return new Instance[] {
                 new Instance(Util.SOURCE_FILENAME_MASK, "UTF-8", "UTF-8"),
+                new Instance(Util.GZIP_SOURCE_FILENAME_MASK, "UTF-8", "UTF-8"),
         };
     }
 
@@ -698,6 +467,161 @@ public class TipeFilter extends AbstractFilter {
         return true;
     }
 
+    /**
+     * Align existing source and translated documents. Segments are paired
+     * by their block tag and formatting tags, and links of paired segments
+     * are paired by their meta tags.
+     */
+    @Override
+    protected void alignFile(final BufferedReader sourceFile, final BufferedReader translatedFile,
+                             final FilterContext fc) throws Exception {
+        TagSet tagSet = TagSet.forOptions(processOptions);
+        List<Segment> sourceSegments = new ArrayList<>();
+        List<String> sourceSignatures = new ArrayList<>();
+        collectSegments(TokenizedDocument.tokenize(DocumentWriter.read(sourceFile), tagSet),
+                sourceSegments, sourceSignatures);
+        List<Segment> targetSegments = new ArrayList<>();
+        List<String> targetSignatures = new ArrayList<>();
+        collectSegments(TokenizedDocument.tokenize(DocumentWriter.read(translatedFile), tagSet),
+                targetSegments, targetSignatures);
+
+        SegmentAligner.align(sourceSignatures, targetSignatures, (i, j) -> {
+            Segment source = sourceSegments.get(i);
+            Segment target = targetSegments.get(j);
+            entryAlignCallback.addTranslation(null, source.getSource(), target.getSource(),
+                    false, null, this);
+            for (Map.Entry<String, String> hrefEntry : source.getHrefs().entrySet()) {
+                String targetHref = target.getHrefs().get(hrefEntry.getKey());
+                if (targetHref != null) {
+                    entryAlignCallback.addTranslation(null, hrefEntry.getValue(), targetHref,
+                            false, null, this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Collect translatable segments of a document with their signatures.
+     * Signature is the name of the enclosing block tag and the sorted meta
+     * tags of the segment.
+     * @param doc document
+     * @param segments receives segments
+     * @param signatures receives signatures
+     */
+    private static void collectSegments(final TokenizedDocument doc, final List<Segment> segments,
+                                        final List<String> signatures) {
+        DocumentTree tree = doc.getTree();
+        DocumentWriter.scan(doc, (segment, firstBlock) -> {
+            String blockTag = tree.getName(tree.getEnclosingBlock(firstBlock));
+            if (blockTag == null) {
+                blockTag = "";
+            }
+            segments.add(segment);
+            signatures.add(blockTag + " "
+                    + String.join("", new TreeSet<>(segment.getMetaBodies().keySet())));
+        });
+    }
+
+    @Override
+    public void translateFile(final File inFile, final File outFile,
+                              final Map<String, String> config, final FilterContext fc,
+                              final ITranslateCallback callback) throws Exception {
+        translating = true;
+        translatePass = 0;
+        try {
+            super.translateFile(inFile, outFile, config, fc, callback);
+        } finally {
+            translating = false;
+        }
+    }
+
+    /**
+     * Compressed files are inflated while they are read.
+     */
+    @Override
+    protected BufferedReader createReader(final File inFile, final String inEncoding)
+            throws IOException {
+        if (!Util.isCompressed(inFile)) {
+            return super.createReader(inFile, inEncoding);
+        }
+        InputStream input = new FileInputStream(inFile);
+        try {
+            input = new GZIPInputStream(input, GZIP_BUFFER_SIZE);
+            InputStreamReader reader;
+            if (inEncoding == null) {
+                reader = new InputStreamReader(input, Charset.defaultCharset());
+            } else {
+                reader = new InputStreamReader(input, inEncoding);
+            }
+            return new BufferedReader(reader);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Target is written only on the last translate pass and only if its
+     * content differs from the one written by the previous run. Targets
+     * with gzip suffix are compressed.
+     */
+    @Override
+    protected BufferedWriter createWriter(final File outFile, final String outEncoding)
+            throws IOException {
+        if (isLinkingPass()) {
+            // First pass only links segments, second pass writes the same target again
+            return new BufferedWriter(Writer.nullWriter());
+        }
+        targetOutput = new TargetOutput(outFile);
+        OutputStream output = targetOutput;
+        if (Util.isCompressed(outFile)) {
+            // Header carries no time stamp, so same content gives same bytes
+            output = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+        }
+        OutputStreamWriter writer;
+        if (outEncoding == null) {
+            writer = new OutputStreamWriter(output, Charset.defaultCharset());
+        } else {
+            writer = new OutputStreamWriter(output, outEncoding);
+        }
+        targetStream = output;
+        targetCharset = Charset.forName(writer.getEncoding());
+        return new BufferedWriter(writer);
+    }
+
+    @Override
+    protected void processFile(final File inFile, final File outFile, final FilterContext fc)
+            throws IOException, TranslationException {
+        activated = true;
+        filePath = inFile.getPath();
+        // Project load and target generation may name the same file differently
+        hrefFile = inFile.toPath().toAbsolutePath().normalize().toString();
+        stamp = new DocumentCache.Stamp(inFile, fc.getInEncoding(),
+                TagSet.forOptions(processOptions));
+        Util.setCurrentEncoding(fc.getInEncoding());
+        cacheEntry = DocumentCache.get(filePath, stamp);
+        if (translating) {
+            translatePass++;
+        }
+        try {
+            super.processFile(inFile, outFile, fc);
+            if (targetOutput != null) {
+                targetOutput.commit(DigestStore.current());
+            }
+        } finally {
+            if (targetOutput != null) {
+                targetOutput.discard();
+                targetOutput = null;
+            }
+            targetStream = null;
+            targetCharset = null;
+            filePath = null;
+            hrefFile = null;
+            stamp = null;
+            cacheEntry = null;
+        }
+    }
+
     /**
      * All stuff starts here.
      */
@@ -705,29 +629,69 @@ public class TipeFilter extends AbstractFilter {
     public void processFile(final BufferedReader reader, final BufferedWriter outfile,
             final FilterContext fc) throws IOException {
 
-        // Read file
-        StringBuilder builder = new StringBuilder();
-        LinebreakPreservingReader lbpr = new LinebreakPreservingReader(reader);
-        String line, br;
+        TagSet tagSet = TagSet.forOptions(processOptions);
+        Util.setCurrentTagSet(tagSet);
+        dedupeHrefs = processOptions != null
+                && Boolean.parseBoolean(processOptions.get(OPTION_DEDUPE_HREFS));
+
+        if (cacheEntry != null) {
+            // Source did not change since it was tokenized last time
+            document = cacheEntry.getDocument();
+        } else {
+            FilterEvents.ReadEvent readEvent = new FilterEvents.ReadEvent();
+            readEvent.begin();
+            String text = DocumentWriter.read(reader);
+            if (readEvent.shouldCommit()) {
+                readEvent.commit(filePath, text.length(), 0, 0);
+            }
 
-        while ((line = lbpr.readLine()) != null) {
-            br = lbpr.getLinebreak();
-            builder.append(line);
-            builder.append(br);
+            // Find blocks, create meta tags
+            FilterEvents.TokenizeEvent tokenizeEvent = new FilterEvents.TokenizeEvent();
+            tokenizeEvent.begin();
+            document = TokenizedDocument.tokenize(text, tagSet);
+            if (tokenizeEvent.shouldCommit()) {
+                tokenizeEvent.commit(filePath, text.length(), document.getBlocks().size(),
+                        document.getTagCount());
+            }
+
+            if (!document.isWellFormed()) {
+                Log.log("WARNING: Tipe³ filter detected bad HTML formatting. "
+                        + "Check your source document");
+            }
+
+            if (stamp != null) {
+                cacheEntry = DocumentCache.put(filePath, stamp, document);
+            }
         }
 
         fileWriter = outfile;
-        doc = builder.toString();
-
-        // Clean up document level structures
-        documentBlocks.clear();
-        metaToHtmlMap.clear();
-        htmlToMetaMap.clear();
-        metaCounters.clear();
-
-        // Find blocks, create meta tags
-        tokenizeDocument();
-        // Translate actual text
-        translateDocument();
+        segmentCounter = 0;
+        segmentIndex = 0;
+        hrefIndex = 0;
+
+        try {
+            // Translate actual text
+            FilterEvents.TranslateEvent translateEvent = new FilterEvents.TranslateEvent();
+            translateEvent.begin();
+            if (entryParseCallback != null || isLinkingPass()) {
+                // Output is not needed, so tags are not restored
+                DocumentWriter.scan(document, (segment, firstBlock) -> {
+                    processEntry(segment.getSource(), segment.getComment());
+                    translateHrefs(segment);
+                });
+            } else {
+                translateDocument();
+            }
+            if (translateEvent.shouldCommit()) {
+                translateEvent.commit(filePath, document.charCount(0, document.length()),
+                        document.getBlocks().size(), document.getTagCount());
+            }
+        } finally {
+            // Cached documents are held by the cache, others should not outlive the call
+            document = null;
+            previousTarget = null;
+            targetBuilder = null;
+            fileWriter = null;
+        }
     }
 }
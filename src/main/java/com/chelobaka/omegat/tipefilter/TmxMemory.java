@@ -0,0 +1,165 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Source to target segment map read from a TMX file. The file is read
+ * with a streaming parser, so only the resulting map is kept in memory.
+ * Text of inline elements is taken as segment text.
+ */
+final class TmxMemory {
+
+    private final Map<String, String> translations;
+
+    private TmxMemory(final Map<String, String> translations) {
+        this.translations = translations;
+    }
+
+    /**
+     * Read TMX file.
+     * @param file TMX file
+     * @param sourceLanguage source language code
+     * @param targetLanguage target language code
+     * @return translation memory
+     * @throws IOException on read or parse error
+     */
+    static TmxMemory load(final File file, final String sourceLanguage,
+                          final String targetLanguage) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        Map<String, String> translations = new HashMap<>();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                Map<String, String> variants = new HashMap<>();
+                String language = null;
+                StringBuilder segment = null;
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            String name = reader.getLocalName();
+                            if (name.equals("tu")) {
+                                variants.clear();
+                            } else if (name.equals("tuv")) {
+                                language = getLanguage(reader);
+                            } else if (name.equals("seg")) {
+                                segment = new StringBuilder();
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (segment != null) {
+                                segment.append(reader.getText());
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            name = reader.getLocalName();
+                            if (name.equals("seg") && segment != null && language != null) {
+                                variants.put(language, segment.toString());
+                                segment = null;
+                            } else if (name.equals("tu")) {
+                                addUnit(translations, variants, sourceLanguage, targetLanguage);
+                            }
+                            break;
+                        default:
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't read " + file + ": " + e.getMessage(), e);
+        }
+        return new TmxMemory(translations);
+    }
+
+    private static String getLanguage(final XMLStreamReader reader) {
+        String language = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+        if (language == null) {
+            // TMX 1.1 attribute
+            language = reader.getAttributeValue(null, "lang");
+        }
+        if (language == null) {
+            return null;
+        }
+        return language.toLowerCase(Locale.ROOT);
+    }
+
+    private static void addUnit(final Map<String, String> translations,
+                                final Map<String, String> variants,
+                                final String sourceLanguage, final String targetLanguage) {
+        String source = findVariant(variants, sourceLanguage);
+        String target = findVariant(variants, targetLanguage);
+        if (source != null && target != null && !source.isEmpty()) {
+            translations.put(source, target);
+        }
+    }
+
+    /**
+     * Find variant of exactly the same language or, failing that, of the
+     * same primary language.
+     */
+    private static String findVariant(final Map<String, String> variants, final String language) {
+        String code = language.toLowerCase(Locale.ROOT);
+        String result = variants.get(code);
+        if (result != null) {
+            return result;
+        }
+        String primary = code.split("[-_]")[0];
+        for (Map.Entry<String, String> variant : variants.entrySet()) {
+            if (variant.getKey().split("[-_]")[0].equals(primary)) {
+                return variant.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get translation of a segment.
+     * @param source segment source
+     * @return translation or null
+     */
+    String get(final String source) {
+        return translations.get(source);
+    }
+
+    int size() {
+        return translations.size();
+    }
+}
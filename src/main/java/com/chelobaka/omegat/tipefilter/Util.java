@@ -23,12 +23,17 @@ package com.chelobaka.omegat.tipefilter;
 
 import org.omegat.core.Core;
 import org.omegat.core.data.IProject;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.core.data.TMXEntry;
 
-import java.util.LinkedHashMap;
+import java.io.File;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 
+import com.chelobaka.tipe.core.TagSet;
+
 
 /**
  * Common utility stuff.
@@ -36,6 +41,8 @@ import java.util.ResourceBundle;
 final class Util {
 
     static final String SOURCE_FILENAME_MASK  = "*.tip";
+    static final String GZIP_SOURCE_FILENAME_MASK  = "*.tip.gz";
+    private static final String GZIP_SUFFIX = ".gz";
 
     // Resource bundle
     static final ResourceBundle RESOURCE_BUNDLE;
@@ -47,14 +54,53 @@ final class Util {
     // Filter name for OmegaT
     static final String FILTER_NAME = RESOURCE_BUNDLE.getString("FILTER_NAME");
 
-    // Tag names with corresponding resource bundle strings
-    static final Map<String, String> TAG_MAP = new LinkedHashMap<>();
+    // Resource bundle strings for known marker tags
+    private static final Map<String, String> TAG_DESCRIPTIONS = new HashMap<>();
     static {
-        TAG_MAP.put("strong", "FORMAT_STRONG");
-        TAG_MAP.put("em", "FORMAT_EMPHASIS");
-        TAG_MAP.put("sup", "FORMAT_SUPERSCRIPT");
-        TAG_MAP.put("sub", "FORMAT_SUBSCRIPT");
-    };
+        TAG_DESCRIPTIONS.put("strong", "FORMAT_STRONG");
+        TAG_DESCRIPTIONS.put("em", "FORMAT_EMPHASIS");
+        TAG_DESCRIPTIONS.put("sup", "FORMAT_SUPERSCRIPT");
+        TAG_DESCRIPTIONS.put("sub", "FORMAT_SUBSCRIPT");
+    }
+
+    // Tag set of the last processed file, used by editor helpers
+    private static volatile TagSet currentTagSet;
+
+    static TagSet getCurrentTagSet() {
+        TagSet tagSet = currentTagSet;
+        if (tagSet == null) {
+            return TagSet.DEFAULT;
+        }
+        return tagSet;
+    }
+
+    static void setCurrentTagSet(final TagSet tagSet) {
+        currentTagSet = tagSet;
+    }
+
+    // Source encoding of the last processed file, null for the platform default
+    private static volatile String currentEncoding;
+
+    static String getCurrentEncoding() {
+        return currentEncoding;
+    }
+
+    static void setCurrentEncoding(final String encoding) {
+        currentEncoding = encoding;
+    }
+
+    /**
+     * Get human readable marker tag description.
+     * @param name tag name
+     * @return description
+     */
+    static String describeTag(final String name) {
+        String key = TAG_DESCRIPTIONS.get(name);
+        if (key == null) {
+            return "<" + name + ">";
+        }
+        return RESOURCE_BUNDLE.getString(key);
+    }
 
     /**
      * Check if current file is supported by filter.
@@ -74,6 +120,36 @@ final class Util {
         return false;
     }
 
+    /**
+     * Collect translations of all href entries of a project.
+     * @param project loaded project
+     * @return href to translation map
+     */
+    static Map<String, String> collectHrefTranslations(final IProject project) {
+        String hrefComment = RESOURCE_BUNDLE.getString("HYPERLINK_FOR") + " ";
+        Map<String, String> translations = new HashMap<>();
+        for (SourceTextEntry ste : project.getAllEntries()) {
+            String comment = ste.getComment();
+            if (comment == null || !comment.startsWith(hrefComment)) {
+                continue;
+            }
+            TMXEntry te = project.getTranslationInfo(ste);
+            if (te != null && te.isTranslated()) {
+                translations.putIfAbsent(ste.getSrcText(), te.translation);
+            }
+        }
+        return translations;
+    }
+
+    /**
+     * Check if file is gzip compressed by its name.
+     * @param file file
+     * @return check result
+     */
+    static boolean isCompressed(final File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX);
+    }
+
     private Util() {
         // Disable instance creation.
     }
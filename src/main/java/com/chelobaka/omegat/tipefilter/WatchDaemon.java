@@ -0,0 +1,322 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.omegat.filters2.FilterContext;
+import org.omegat.filters2.ITranslateCallback;
+import org.omegat.util.Language;
+import org.omegat.util.Log;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps target files up to date while tipe³ sources are edited.
+ * Sources are translated with a local TMX file; segments missing from it
+ * are left untranslated. Changes arriving within the debounce interval
+ * ({@code tipe.watch.debounce} milliseconds) are processed as one batch.
+ * One filter instance is used for the whole session, so tokenized
+ * documents stay in the document cache between batches.
+ *
+ * <p>Usage: {@code WatchDaemon <source dir> <target dir> <tmx> <source lang> <target lang>}
+ */
+public final class WatchDaemon {
+
+    private static final long DEBOUNCE = Integer.getInteger("tipe.watch.debounce", 300);
+
+    private final Path sourceDir;
+    private final Path targetDir;
+    private final File tmxFile;
+    private final String sourceLanguage;
+    private final String targetLanguage;
+    private final FilterContext context;
+    private final TipeFilter filter = new TipeFilter();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    private TmxMemory memory;
+
+    WatchDaemon(final Path sourceDir, final Path targetDir, final File tmxFile,
+                final String sourceLanguage, final String targetLanguage) {
+        this.sourceDir = sourceDir.toAbsolutePath().normalize();
+        this.targetDir = targetDir.toAbsolutePath().normalize();
+        this.tmxFile = tmxFile.getAbsoluteFile();
+        this.sourceLanguage = sourceLanguage;
+        this.targetLanguage = targetLanguage;
+        context = new FilterContext(new Language(sourceLanguage), new Language(targetLanguage),
+                false).setInEncoding("UTF-8").setOutEncoding("UTF-8");
+    }
+
+    /**
+     * Start watching.
+     * @param args source directory, target directory, TMX file, source and target languages
+     * @throws Exception on unrecoverable error
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 5) {
+            System.err.println("Usage: WatchDaemon <source dir> <target dir> <tmx> "
+                    + "<source lang> <target lang>");
+            System.exit(2);
+        }
+        new WatchDaemon(new File(args[0]).toPath(), new File(args[1]).toPath(), new File(args[2]),
+                args[3], args[4]).run();
+    }
+
+    /**
+     * Translate all sources, then wait for changes until interrupted.
+     * @throws IOException on watch service failure
+     * @throws InterruptedException when interrupted
+     */
+    void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            register(watcher, sourceDir);
+            Path tmxDir = tmxFile.toPath().getParent();
+            if (!tmxDir.startsWith(sourceDir)) {
+                keys.put(tmxDir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), tmxDir);
+            }
+            reloadMemory();
+            process(listSources(sourceDir), false);
+            Log.log("Watching " + sourceDir);
+
+            while (true) {
+                Set<Path> changed = new TreeSet<>();
+                boolean overflow = false;
+                WatchKey key = watcher.take();
+                while (key != null) {
+                    overflow |= collect(watcher, key, changed);
+                    key = watcher.poll(DEBOUNCE, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    changed.addAll(listSources(sourceDir));
+                }
+                if (changed.contains(tmxFile.toPath())) {
+                    // Edited sources must see the new memory as well
+                    reloadMemory();
+                    // Sources not edited in this batch are still cached
+                    Set<Path> rest = listSources(sourceDir);
+                    rest.removeAll(changed);
+                    process(rest, false);
+                }
+                process(changed, true);
+            }
+        }
+    }
+
+    /**
+     * Add paths of a watch key's events to the changed set.
+     * @return true when events were lost and the whole tree has to be processed
+     */
+    private boolean collect(final WatchService watcher, final WatchKey key,
+                            final Set<Path> changed) throws IOException {
+        Path dir = keys.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)
+                    && path.startsWith(sourceDir)) {
+                register(watcher, path);
+                changed.addAll(listSources(path));
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    private void register(final WatchService watcher, final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir,
+                                                     final BasicFileAttributes attrs)
+                    throws IOException {
+                if (dir.startsWith(targetDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Set<Path> listSources(final Path root) throws IOException {
+        Set<Path> result = new TreeSet<>();
+        if (!Files.isDirectory(root)) {
+            return result;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir,
+                                                     final BasicFileAttributes attrs) {
+                if (dir.startsWith(targetDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (isSource(file)) {
+                    result.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private static boolean isSource(final Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".tip") || name.endsWith(".tip.gz");
+    }
+
+    void reloadMemory() {
+        if (!tmxFile.isFile()) {
+            memory = null;
+            Log.log("WARNING: " + tmxFile + " not found, targets are left untranslated");
+            return;
+        }
+        try {
+            memory = TmxMemory.load(tmxFile, sourceLanguage, targetLanguage);
+            Log.log("Loaded " + memory.size() + " translations from " + tmxFile);
+        } catch (IOException e) {
+            // Keep previous memory, the file may be in the middle of being written
+            Log.log(e);
+        }
+    }
+
+    /**
+     * Regenerate targets of sources and delete targets of removed ones.
+     * @param changed changed paths; paths other than tipe³ sources and
+     *                removed directories are ignored
+     * @param modified whether the sources were edited; a save may keep file
+     *                 length and modification time, so cached tokenization is dropped
+     */
+    void process(final Set<Path> changed, final boolean modified) {
+        for (Path source : changed) {
+            if (!source.startsWith(sourceDir) || source.startsWith(targetDir)) {
+                continue;
+            }
+            File target = targetDir.resolve(sourceDir.relativize(source)).toFile();
+            try {
+                if (target.isDirectory() && !Files.exists(source)) {
+                    // A deleted directory is reported alone, without its files
+                    removeTree(target.toPath());
+                    Log.log("Removed " + target);
+                    continue;
+                }
+                if (!isSource(source)) {
+                    continue;
+                }
+                if (modified) {
+                    DocumentCache.remove(source.toFile().getPath());
+                }
+                if (Files.isRegularFile(source)) {
+                    File parent = target.getParentFile();
+                    if (!parent.isDirectory() && !parent.mkdirs()) {
+                        throw new IOException("Can't create " + parent);
+                    }
+                    filter.translateFile(source.toFile(), target, Collections.emptyMap(),
+                            context, new MemoryCallback());
+                    Log.log("Updated " + target);
+                } else {
+                    Files.deleteIfExists(target.toPath());
+                    Log.log("Removed " + target);
+                }
+            } catch (Exception e) {
+                Log.log("Can't process " + source);
+                Log.log(e);
+            }
+        }
+    }
+
+    private static void removeTree(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
+                    throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private final class MemoryCallback implements ITranslateCallback {
+
+        @Override
+        public String getTranslation(final String id, final String source, final String path) {
+            return getTranslation(id, source);
+        }
+
+        @Override
+        public String getTranslation(final String id, final String source) {
+            if (memory == null) {
+                return null;
+            }
+            return memory.get(source);
+        }
+
+        @Override
+        public void linkPrevNextSegments() {
+        }
+
+        @Override
+        public void setPass(final int pass) {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.chelobaka.tipe.core.SegmentAligner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AlignTest {
+
+    @Test
+    public void testAlignFile() throws Exception {
+        File source = write("<h1>Title</h1>\n"
+                + "<p>First <a href=\"one.html\">link</a></p>\n"
+                + "<p>Second <strong>bold</strong></p>\n"
+                + "<p>Third</p>\n");
+        File target = write("<h1>Заголовок</h1>\n"
+                + "<p>Первый <a href=\"ru/one.html\">линк</a></p>\n"
+                + "<p>Добавленный</p>\n"
+                + "<p>Второй <strong>жирный</strong></p>\n"
+                + "<p>Третий</p>\n");
+
+        List<String> pairs = new ArrayList<>();
+        new TipeFilter().alignFile(source, target, Collections.emptyMap(), FilterRunner.CONTEXT,
+                (id, src, translation, isFuzzy, path, filter) ->
+                        pairs.add(src + " = " + translation));
+
+        assertEquals(Arrays.asList(
+                "<h1>Title</h1> = <h1>Заголовок</h1>",
+                "First <a1>link</a1> = Первый <a1>линк</a1>",
+                "one.html = ru/one.html",
+                "Second <s1>bold</s1> = Второй <s1>жирный</s1>",
+                "Third = Третий"), pairs);
+    }
+
+    @Test
+    public void testSignatures() {
+        List<String> pairs = new ArrayList<>();
+        SegmentAligner.align(Arrays.asList("p", "p <b1>", "li", "li", "p"),
+                Arrays.asList("p", "li", "li", "h2", "p"),
+                (i, j) -> pairs.add(i + ":" + j));
+        assertEquals(Arrays.asList("0:0", "2:1", "3:2", "4:4"), pairs);
+    }
+
+    private static File write(final String text) throws Exception {
+        File file = File.createTempFile("align", ".tip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,172 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation budgets of the hot paths.
+ *
+ * Each test runs a filter path on a standard input and measures bytes
+ * allocated by the current thread per KB of input. Budgets below are
+ * a contract: if a change makes a path allocate more, either fix the
+ * change or raise the budget in the same commit with a reason.
+ * Budgets are set to about twice the measured allocation.
+ *
+ * Run with {@code gradle allocationReport}.
+ */
+@Tag("allocation")
+public class AllocationBudgetTest {
+
+    // Parsing (processFile with parse callback), bytes per KB of input
+    private static final long PARSE_BUDGET = 320_000;
+
+    // Translation (processFile and translateBlocks), bytes per KB of input
+    private static final long TRANSLATE_BUDGET = 640_000;
+
+    // HTMLTagMarker on a formatted translation, bytes per KB of input
+    private static final long MARKER_BUDGET = 12_000;
+
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 10;
+
+    // Standard inputs
+    private static final int MARKUP_COPIES = 100;
+    private static final int TEXT_PARAGRAPHS = 600;
+
+    private static File markupFile;
+    private static File textFile;
+    private static File outFile;
+
+    @BeforeAll
+    static void createInputs() throws Exception {
+        File sample = new File(AllocationBudgetTest.class
+                .getResource("/filters/tipe/test.tip").toURI());
+        String markup = new String(Files.readAllBytes(sample.toPath()), StandardCharsets.UTF_8);
+        markupFile = writeTemp(String.join("\n\n", Collections.nCopies(MARKUP_COPIES, markup)));
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < TEXT_PARAGRAPHS; i++) {
+            text.append("Plain paragraph number ").append(i)
+                    .append(" with some words, a <strong>bold</strong> word and ")
+                    .append("кириллический текст for good measure.\n\n");
+        }
+        textFile = writeTemp(text.toString());
+
+        outFile = File.createTempFile("allocation", ".tip");
+        outFile.deleteOnExit();
+    }
+
+    private static File writeTemp(final String content) throws Exception {
+        File file = File.createTempFile("allocation", ".tip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testParseMarkup() throws Exception {
+        checkBudget("parse markup", markupFile.length(), PARSE_BUDGET,
+                () -> FilterRunner.parse(markupFile));
+    }
+
+    @Test
+    public void testParseText() throws Exception {
+        checkBudget("parse text", textFile.length(), PARSE_BUDGET,
+                () -> FilterRunner.parse(textFile));
+    }
+
+    @Test
+    public void testTranslateMarkup() throws Exception {
+        checkBudget("translate markup", markupFile.length(), TRANSLATE_BUDGET,
+                () -> translate(markupFile));
+    }
+
+    @Test
+    public void testTranslateText() throws Exception {
+        checkBudget("translate text", textFile.length(), TRANSLATE_BUDGET,
+                () -> translate(textFile));
+    }
+
+    @Test
+    public void testMarker() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 64 * 1024) {
+            builder.append("Some <strong>bold</strong> and <em>italic</em> text with")
+                    .append(" <sup>upper</sup> and <sub>lower</sub> <x1>meta</x1> tags. ");
+        }
+        String translation = builder.toString();
+        HTMLTagMarker marker = new HTMLTagMarker();
+        assertNotNull(marker.findMarks(translation));
+        checkBudget("marker", translation.length(), MARKER_BUDGET,
+                () -> marker.findMarks(translation));
+    }
+
+    private static void translate(final File file) throws Exception {
+        FilterRunner.translate(new TipeFilter(), file, outFile, Collections.emptyMap(),
+                UnaryOperator.identity());
+    }
+
+    /**
+     * Measured operation.
+     */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static void checkBudget(final String name, final long inputSize, final long budget,
+                                    final Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(bean.isThreadAllocatedMemorySupported(),
+                "Thread allocation measurement is not supported by this JVM");
+        bean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            operation.run();
+        }
+
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            operation.run();
+        }
+        long allocated = (bean.getThreadAllocatedBytes(threadId) - before) / MEASURED_RUNS;
+
+        long perKb = allocated * 1024 / inputSize;
+        System.out.printf("%s: %d bytes per KB (budget %d)%n", name, perKb, budget);
+        assertTrue(perKb <= budget, () -> String.format(
+                "%s allocates %d bytes per KB of input, budget is %d", name, perKb, budget));
+    }
+}
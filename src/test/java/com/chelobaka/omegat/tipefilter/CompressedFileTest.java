@@ -0,0 +1,74 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompressedFileTest {
+
+    @Test
+    public void testCompressedFiles() throws Exception {
+        File in = File.createTempFile("source", ".tip.gz");
+        File out = File.createTempFile("target", ".tip.gz");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(in))) {
+            output.write("<p>One</p>\n<p>Two</p>\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(Arrays.asList("One", "Two"), FilterRunner.parse(in));
+
+        TipeFilter filter = new TipeFilter();
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), String::toUpperCase);
+        assertEquals("<p>ONE</p>\n<p>TWO</p>\n", inflate(out));
+
+        // Same content is compressed to the same bytes
+        byte[] first = Files.readAllBytes(out.toPath());
+        Files.delete(out.toPath());
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), String::toUpperCase);
+        assertArrayEquals(first, Files.readAllBytes(out.toPath()));
+    }
+
+    private static String inflate(final File file) throws Exception {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+            input.transferTo(result);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,261 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.chelobaka.tipe.core.DocumentHandler;
+import com.chelobaka.tipe.core.DocumentParser;
+import com.chelobaka.tipe.core.DocumentWriter;
+import com.chelobaka.tipe.core.Segment;
+import com.chelobaka.tipe.core.TagSet;
+import com.chelobaka.tipe.core.TokenizedDocument;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Compares every optimized path with the frozen {@link ReferenceFilter}
+ * on random and mutated documents. Failing documents are shrunk and
+ * reported as Java string literals.
+ *
+ * <p>Iteration count and seed come from {@code tipe.fuzz.iterations} and
+ * {@code tipe.fuzz.seed}. Task {@code fuzzReport} runs longer with a random
+ * seed, {@code -PfuzzSeed} repeats a reported failure.
+ */
+public class DifferentialFuzzTest {
+
+    private static final int ITERATIONS = Integer.getInteger("tipe.fuzz.iterations", 300);
+    private static final long SEED = Long.getLong("tipe.fuzz.seed", 3L);
+
+    private static final TagSet MARKDOWN = TagSet.forOptions(
+            Collections.singletonMap(TagSet.OPTION_MARKDOWN, "true"));
+
+    // Streaming parser receives this many chars per read
+    private static final int TRICKLE_SIZE = 3;
+
+    private static final String SEED_DOCUMENT = "src/test/resources/filters/tipe/test.tip";
+
+    /**
+     * Document processing path.
+     */
+    private interface Path {
+        Object run(String doc) throws Exception;
+    }
+
+    @Test
+    public void testOptimizedPathsMatchReference() throws Exception {
+        Map<String, Path[]> checks = new LinkedHashMap<>();
+        checks.put("core segments", new Path[] {
+            ReferenceFilter::segments, DifferentialFuzzTest::coreSegments});
+        checks.put("streaming segments", new Path[] {
+            ReferenceFilter::segments, DifferentialFuzzTest::streamingSegments});
+        checks.put("core output", new Path[] {
+            DifferentialFuzzTest::referenceOutput, DifferentialFuzzTest::coreOutput});
+        checks.put("filter entries", new Path[] {
+            DifferentialFuzzTest::referenceEntries, DifferentialFuzzTest::filterEntries});
+        checks.put("filter output", new Path[] {
+            DifferentialFuzzTest::referenceOutput, DifferentialFuzzTest::filterOutput});
+        checks.put("coalesced filter output", new Path[] {
+            DifferentialFuzzTest::referenceOutput, DifferentialFuzzTest::coalescedOutput});
+        checks.put("streaming markdown segments", new Path[] {
+            d -> coreSegments(d, MARKDOWN), d -> streamingSegments(d, MARKDOWN)});
+
+        String seedDocument = new String(Files.readAllBytes(Paths.get(SEED_DOCUMENT)),
+                StandardCharsets.UTF_8);
+        DocumentFuzzer fuzzer = new DocumentFuzzer(SEED, Collections.singletonList(seedDocument));
+        for (int i = 0; i < ITERATIONS; i++) {
+            String doc = fuzzer.next();
+            for (Map.Entry<String, Path[]> check : checks.entrySet()) {
+                Path reference = check.getValue()[0];
+                Path candidate = check.getValue()[1];
+                if (!differs(reference, candidate, doc)) {
+                    continue;
+                }
+                String small = DocumentFuzzer.shrink(doc, d -> differs(reference, candidate, d));
+                fail(String.format("%s differ from reference, seed %d, document %d%n"
+                        + "Input:    %s%nExpected: %s%nActual:   %s", check.getKey(), SEED, i,
+                        DocumentFuzzer.escape(small), result(reference, small),
+                        result(candidate, small)));
+            }
+        }
+    }
+
+    private static boolean differs(final Path reference, final Path candidate, final String doc) {
+        return !result(reference, doc).equals(result(candidate, doc));
+    }
+
+    private static String result(final Path path, final String doc) {
+        try {
+            return String.valueOf(path.run(doc));
+        } catch (Exception | AssertionError e) {
+            return "failure: " + e;
+        }
+    }
+
+    /**
+     * Translation, which changes text, but keeps meta tags.
+     */
+    private static String shout(final String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (String part : text.split("(?=<)|(?<=>)")) {
+            if (part.startsWith("<") && part.endsWith(">")) {
+                result.append(part);
+            } else {
+                result.append(part.toUpperCase(Locale.ROOT));
+            }
+        }
+        return result.toString();
+    }
+
+    private static String referenceOutput(final String doc) {
+        return ReferenceFilter.translate(doc, (source, comment) -> shout(source),
+                DifferentialFuzzTest::shout);
+    }
+
+    private static List<String> referenceEntries(final String doc) {
+        List<String> result = new ArrayList<>();
+        ReferenceFilter.translate(doc, (source, comment) -> {
+            if (!source.isEmpty()) {
+                result.add(source);
+            }
+            return source;
+        }, href -> {
+            if (!href.isEmpty()) {
+                result.add(href);
+            }
+            return href;
+        });
+        return result;
+    }
+
+    private static List<String> coreSegments(final String doc) {
+        return coreSegments(doc, TagSet.DEFAULT);
+    }
+
+    private static List<String> coreSegments(final String doc, final TagSet tagSet) {
+        List<String> result = new ArrayList<>();
+        DocumentWriter.scan(TokenizedDocument.tokenize(doc, tagSet),
+                (segment, firstBlock) -> result.add(
+                        ReferenceFilter.describe(segment.getSource(), segment.getComment())));
+        return result;
+    }
+
+    private static List<String> streamingSegments(final String doc) throws Exception {
+        return streamingSegments(doc, TagSet.DEFAULT);
+    }
+
+    private static List<String> streamingSegments(final String doc, final TagSet tagSet)
+            throws Exception {
+        List<String> result = new ArrayList<>();
+        Reader reader = new StringReader(doc) {
+            @Override
+            public int read(final char[] buffer, final int offset, final int length)
+                    throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, TRICKLE_SIZE));
+            }
+        };
+        DocumentParser.parse(reader, tagSet, new DocumentHandler() {
+            @Override
+            public void segment(final Segment segment) {
+                result.add(ReferenceFilter.describe(segment.getSource(), segment.getComment()));
+            }
+        });
+        return result;
+    }
+
+    private static String coreOutput(final String doc) throws Exception {
+        StringBuilder output = new StringBuilder();
+        DocumentWriter.translate(TokenizedDocument.tokenize(doc, TagSet.DEFAULT), output::append,
+                new DocumentWriter.Translator() {
+                    @Override
+                    public String translate(final String source, final String comment) {
+                        return shout(source);
+                    }
+
+                    @Override
+                    public String translateHref(final String href, final String metaTag) {
+                        return shout(href);
+                    }
+                });
+        return output.toString();
+    }
+
+    private static List<String> filterEntries(final String doc) throws Exception {
+        File in = write(doc);
+        try {
+            return FilterRunner.parse(in);
+        } finally {
+            Files.delete(in.toPath());
+        }
+    }
+
+    /**
+     * Translate the same file several times, so later runs take the
+     * cached document and reuse previous output of unchanged segments.
+     */
+    private static String filterOutput(final String doc) throws Exception {
+        return filterOutput(doc, Collections.emptyMap());
+    }
+
+    /**
+     * Merged cells keep meta tags and placeholders, so their output is
+     * the same as of separate segments.
+     */
+    private static String coalescedOutput(final String doc) throws Exception {
+        return filterOutput(doc, Collections.singletonMap(TagSet.OPTION_COALESCE, "true"));
+    }
+
+    private static String filterOutput(final String doc, final Map<String, String> options)
+            throws Exception {
+        File in = write(doc);
+        File out = File.createTempFile("fuzz", ".tip");
+        try {
+            TipeFilter filter = new TipeFilter();
+            FilterRunner.translate(filter, in, out, options, s -> s);
+            FilterRunner.translate(filter, in, out, options, DifferentialFuzzTest::shout);
+            FilterRunner.translate(filter, in, out, options, DifferentialFuzzTest::shout);
+            return new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            Files.delete(in.toPath());
+            Files.delete(out.toPath());
+        }
+    }
+
+    private static File write(final String doc) throws Exception {
+        File file = File.createTempFile("fuzz", ".tip");
+        Files.write(file.toPath(), doc.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
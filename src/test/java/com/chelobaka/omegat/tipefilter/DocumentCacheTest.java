@@ -0,0 +1,101 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import com.chelobaka.tipe.core.TagSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DocumentCacheTest {
+
+    private static final String SOURCE = "<p>First <a href=\"one.html\">link</a></p>\n"
+            + "<p>Second &amp; <strong>bold</strong></p>\n"
+            + "<p>Third</p>\n";
+
+    @Test
+    public void testChangedSegmentsOnly() throws Exception {
+        File in = File.createTempFile("cache", ".tip");
+        File out = File.createTempFile("cache", ".tip");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Files.write(in.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+
+        TipeFilter filter = new TipeFilter();
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), s -> s);
+        assertEquals(SOURCE, read(out));
+        DocumentCache.Entry entry = DocumentCache.get(in.getPath(),
+                new DocumentCache.Stamp(in, "UTF-8", TagSet.DEFAULT));
+        assertNotNull(entry);
+        assertNotNull(entry.getTarget());
+
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), s -> {
+            if (s.startsWith("Second")) {
+                return s.replace("Second", "Zweite").replace("bold", "fett");
+            }
+            if (s.equals("one.html")) {
+                return "eins.html";
+            }
+            return s;
+        });
+        assertEquals("<p>First <a href=\"eins.html\">link</a></p>\n"
+                + "<p>Zweite &amp; <strong>fett</strong></p>\n"
+                + "<p>Third</p>\n", read(out));
+
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), s -> s);
+        assertEquals(SOURCE, read(out));
+    }
+
+    @Test
+    public void testSameSizeEdit() throws Exception {
+        File in = File.createTempFile("cache", ".tip");
+        in.deleteOnExit();
+        Files.write(in.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+        long lastModified = in.lastModified();
+        DocumentCache.Stamp stamp = new DocumentCache.Stamp(in, "UTF-8", TagSet.DEFAULT);
+        assertTrue(stamp.matches(in));
+
+        // Quick save keeps length and modification time
+        Files.write(in.toPath(), SOURCE.replace("First", "Fifth")
+                .getBytes(StandardCharsets.UTF_8));
+        assertTrue(in.setLastModified(lastModified));
+        assertFalse(stamp.matches(in));
+        assertFalse(stamp.matches(new DocumentCache.Stamp(in, "UTF-8", TagSet.DEFAULT)));
+
+        DocumentCache.put(in.getPath(), stamp, null);
+        assertNull(DocumentCache.getDocument(in.getPath(), in));
+        DocumentCache.remove(in.getPath());
+    }
+
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Generates random and mutated tipe³ documents and shrinks failing ones.
+ */
+final class DocumentFuzzer {
+
+    private static final int MAX_FRAGMENTS = 40;
+    private static final int MAX_MUTATIONS = 4;
+
+    // Pieces of markup, which are likely to meet parser edge cases
+    private static final String[] FRAGMENTS = {
+        "<strong>", "</strong>", "<em>", "</em>", "<sup>", "</sup>", "<span class=\"x\">",
+        "</span>", "<a href=\"page.html\">", "<a href=\"a$1\\b.html\">", "<a href=\"\">",
+        "</a>", "<strike", "</em", "<p>", "</p>", "<div align=\"center\">", "</div>", "<div/>",
+        "<li>", "</li>", "<td >", "</td>  ", "<iframe src=\"v\">", "</iframe>", "{{IMG|1|x.jpg}}",
+        "{{IMG", "}}", "{{IMG|2|\n}}", "\n", "\n\n  ", "\r\n", " ", "\t", "  ", "&amp;",
+        "&nbsp;", "&quot;", "&lt;", "\u00A0", "&", "\"", "<", ">", "<e1>", "$1", "\\",
+        "text", "Two words", "\u0422\u0435\u043A\u0441\u0442", "\u65E5\u672C",
+        "\uD83D\uDE00", "href=\"page.html\"", "# ", "## ", "*", "**", "_", "[", "](page.html)",
+        "`", "\n    ## ", "\n\t# ",
+    };
+
+    private final Random random;
+    private final List<String> seeds;
+
+    DocumentFuzzer(final long seed, final List<String> seeds) {
+        this.random = new Random(seed);
+        this.seeds = seeds;
+    }
+
+    /**
+     * Get next document: either generated or mutated seed document.
+     * @return document
+     */
+    String next() {
+        if (seeds.isEmpty() || random.nextBoolean()) {
+            return generate();
+        }
+        String result = seeds.get(random.nextInt(seeds.size()));
+        int mutations = 1 + random.nextInt(MAX_MUTATIONS);
+        for (int i = 0; i < mutations; i++) {
+            result = mutate(result);
+        }
+        return result;
+    }
+
+    private String generate() {
+        StringBuilder result = new StringBuilder();
+        int count = random.nextInt(MAX_FRAGMENTS);
+        for (int i = 0; i < count; i++) {
+            result.append(fragment());
+        }
+        return result.toString();
+    }
+
+    private String fragment() {
+        return FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+    }
+
+    private String mutate(final String doc) {
+        int position = safePosition(doc, random.nextInt(doc.length() + 1));
+        int end = safePosition(doc, position + random.nextInt(doc.length() - position + 1));
+        switch (random.nextInt(3)) {
+            case 0:
+                return doc.substring(0, position) + fragment() + doc.substring(position);
+            case 1:
+                return doc.substring(0, position) + doc.substring(end);
+            default:
+                return doc.substring(0, end) + doc.substring(position, end) + doc.substring(end);
+        }
+    }
+
+    /**
+     * Move position off the middle of a surrogate pair, so documents
+     * always survive a round trip through UTF-8.
+     */
+    private static int safePosition(final String doc, final int position) {
+        if (position > 0 && position < doc.length()
+                && Character.isLowSurrogate(doc.charAt(position))) {
+            return position - 1;
+        }
+        return position;
+    }
+
+    /**
+     * Shrink failing document by removing parts of it while it still fails.
+     * @param doc failing document
+     * @param fails failure check
+     * @return small failing document
+     */
+    static String shrink(final String doc, final Predicate<String> fails) {
+        String result = doc;
+        int chunk = Math.max(1, result.length() / 2);
+        while (true) {
+            boolean removed = false;
+            int i = 0;
+            while (i < result.length()) {
+                int start = safePosition(result, i);
+                int end = safePosition(result, Math.min(result.length(), start + chunk));
+                if (end <= start) {
+                    end = Math.min(result.length(), start + 2);
+                }
+                String candidate = result.substring(0, start) + result.substring(end);
+                if (fails.test(candidate)) {
+                    result = candidate;
+                    removed = true;
+                } else {
+                    i = end;
+                }
+            }
+            if (chunk == 1 && !removed) {
+                return result;
+            }
+            if (!removed) {
+                chunk = Math.max(1, chunk / 2);
+            }
+        }
+    }
+
+    /**
+     * Escape document for a failure message.
+     * @param doc document
+     * @return Java string literal
+     */
+    static String escape(final String doc) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : doc.toCharArray()) {
+            switch (c) {
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                case '"':
+                case '\\':
+                    result.append('\\').append(c);
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        result.append(String.format("\\u%04X", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+}
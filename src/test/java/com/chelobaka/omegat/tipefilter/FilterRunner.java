@@ -0,0 +1,134 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.omegat.core.data.ProtectedPart;
+import org.omegat.filters2.FilterContext;
+import org.omegat.filters2.IFilter;
+import org.omegat.filters2.IParseCallback;
+import org.omegat.filters2.ITranslateCallback;
+import org.omegat.util.Language;
+
+/**
+ * Runs filter outside of OmegaT with minimal callbacks.
+ */
+final class FilterRunner {
+
+    static final FilterContext CONTEXT = new FilterContext(new Language("en"),
+            new Language("ru"), false).setInEncoding("UTF-8").setOutEncoding("UTF-8");
+
+    /**
+     * Parse file and collect segment sources.
+     * @param filter filter
+     * @param file source file
+     * @param options filter options
+     * @return non-empty segment sources in document order
+     * @throws Exception on filter failure
+     */
+    static List<String> parse(final TipeFilter filter, final File file,
+                              final Map<String, String> options) throws Exception {
+        List<String> result = new ArrayList<>();
+        filter.parseFile(file, options, CONTEXT, new IParseCallback() {
+            @Override
+            public void addEntry(final String id, final String source, final String translation,
+                                 final boolean isFuzzy, final String comment,
+                                 final IFilter filter) {
+                addEntry(id, source, translation, isFuzzy, comment, null, filter, null);
+            }
+
+            @Override
+            public void addEntry(final String id, final String source, final String translation,
+                                 final boolean isFuzzy, final String comment, final String path,
+                                 final IFilter filter, final List<ProtectedPart> protectedParts) {
+                if (!source.isEmpty()) {
+                    result.add(source);
+                }
+            }
+
+            @Override
+            public void addEntryWithProperties(final String id, final String source,
+                                               final String translation, final boolean isFuzzy,
+                                               final String[] props, final String path,
+                                               final IFilter filter,
+                                               final List<ProtectedPart> protectedParts) {
+                addEntry(id, source, translation, isFuzzy, null, path, filter, protectedParts);
+            }
+
+            @Override
+            public void linkPrevNextSegments() {
+            }
+        });
+        return result;
+    }
+
+    static List<String> parse(final File file) throws Exception {
+        return parse(new TipeFilter(), file, Collections.emptyMap());
+    }
+
+    /**
+     * Translate file with given translation function.
+     * @param filter filter
+     * @param in source file
+     * @param out target file
+     * @param options filter options
+     * @param translator maps segment source to translation
+     * @throws Exception on filter failure
+     */
+    static void translate(final TipeFilter filter, final File in, final File out,
+                          final Map<String, String> options,
+                          final UnaryOperator<String> translator) throws Exception {
+        filter.translateFile(in, out, options, CONTEXT, new ITranslateCallback() {
+            @Override
+            public String getTranslation(final String id, final String source,
+                                         final String path) {
+                return translator.apply(source);
+            }
+
+            @Override
+            public String getTranslation(final String id, final String source) {
+                return translator.apply(source);
+            }
+
+            @Override
+            public void linkPrevNextSegments() {
+            }
+
+            @Override
+            public void setPass(final int pass) {
+            }
+        });
+    }
+
+    static void translate(final File in, final File out) throws Exception {
+        translate(new TipeFilter(), in, out, Collections.emptyMap(), UnaryOperator.identity());
+    }
+
+    private FilterRunner() {
+    }
+}
@@ -0,0 +1,176 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.chelobaka.tipe.core.TagSet;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runtime on crafted worst case inputs must grow linearly.
+ *
+ * Each input is processed at two sizes. Linear code takes about
+ * {@code SCALE} times longer on the large input, quadratic code takes
+ * {@code SCALE * SCALE} times longer. The limit between them leaves
+ * room for timer noise and garbage collection.
+ *
+ * Run with {@code gradle linearReport}.
+ */
+@Tag("linear")
+public class LinearTimeTest {
+
+    private static final int BASE_SIZE = 2_000;
+    private static final int SCALE = 8;
+    private static final double MAX_RATIO = SCALE * 3;
+
+    // Below this time measurements are dominated by noise
+    private static final long MIN_MEASURABLE_NANOS = 5_000_000;
+
+    private static final int RUNS = 3;
+
+    private static final Map<String, String> MARKDOWN =
+            Collections.singletonMap(TagSet.OPTION_MARKDOWN, "true");
+
+    @Test
+    public void testUnterminatedImageMacros() throws Exception {
+        checkLinear("unterminated {{IMG", n -> repeat("{{IMG|", n));
+    }
+
+    @Test
+    public void testUnterminatedImageMacrosWithLineBreaks() throws Exception {
+        checkLinear("{{IMG broken by line break",
+                n -> repeat("{{IMG|x", n) + "\n}}" + repeat(" text }", n));
+    }
+
+    @Test
+    public void testImageMacrosWithSingleBraces() throws Exception {
+        checkLinear("{{IMG closed by single }", n -> repeat("{{IMG x}\n", n));
+        checkLinear("{{IMG closed by single } in one line", n -> repeat("{{IMG x} ", n));
+    }
+
+    @Test
+    public void testOpeningTagsWithoutBracket() throws Exception {
+        checkLinear("<strong without >", n -> repeat("<strong ", n));
+    }
+
+    @Test
+    public void testBlockTagsWithoutBracket() throws Exception {
+        checkLinear("<div without >", n -> repeat("<div </td ", n));
+    }
+
+    @Test
+    public void testUnclosedTags() throws Exception {
+        checkLinear("unclosed tags", n -> repeat("<em>x<strong>y", n));
+    }
+
+    @Test
+    public void testDeeplyNestedTags() throws Exception {
+        checkLinear("nested tags", n -> repeat("<em>", n) + "x" + repeat("</em>", n));
+    }
+
+    @Test
+    public void testUnclosedHrefs() throws Exception {
+        checkLinear("unclosed href", n -> "<a " + repeat("href=\"x ", n) + ">link</a>");
+    }
+
+    @Test
+    public void testManyLinks() throws Exception {
+        checkLinear("links in one segment",
+                n -> repeat("<a href=\"http://u.net/(a+)+$\">x</a> ", n));
+    }
+
+    @Test
+    public void testUnclosedMarkdown() throws Exception {
+        checkLinear("unclosed markdown", MARKDOWN, n -> repeat("**a *b __c _d [e ](f ", n));
+    }
+
+    @Test
+    public void testUnclosedMarkdownLinks() throws Exception {
+        checkLinear("unclosed markdown links", MARKDOWN,
+                n -> repeat("[x](", n) + "\n" + repeat("[y]", n) + "(z)");
+    }
+
+    @Test
+    public void testMarkdownBracesWithSingleBraces() throws Exception {
+        checkLinear("markdown {{ closed by single }", MARKDOWN, n -> repeat("{{ x} ", n));
+    }
+
+    private static String repeat(final String s, final int n) {
+        return String.join("", Collections.nCopies(n, s));
+    }
+
+    private static void checkLinear(final String name, final IntFunction<String> generator)
+            throws Exception {
+        checkLinear(name, Collections.emptyMap(), generator);
+    }
+
+    private static void checkLinear(final String name, final Map<String, String> options,
+                                    final IntFunction<String> generator) throws Exception {
+        int size = BASE_SIZE;
+        // Warm up
+        measure(options, generator.apply(size));
+        long small = measure(options, generator.apply(size));
+        // Grow base size until small input is measurable
+        while (small < MIN_MEASURABLE_NANOS && size < BASE_SIZE * 64) {
+            size *= 2;
+            small = measure(options, generator.apply(size));
+        }
+        long large = measure(options, generator.apply(size * SCALE));
+        double ratio = (double) large / small;
+        System.out.printf("%s: %d ms -> %d ms, ratio %.1f%n", name, small / 1_000_000,
+                large / 1_000_000, ratio);
+        assertTrue(ratio < MAX_RATIO, () -> String.format(
+                "%s: runtime grows %.1f times for %d times larger input", name, ratio, SCALE));
+    }
+
+    private static long measure(final Map<String, String> options, final String content)
+            throws Exception {
+        File in = File.createTempFile("linear", ".tip");
+        File out = File.createTempFile("linear", ".tip");
+        try {
+            Files.write(in.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                FilterRunner.parse(new TipeFilter(), in, options);
+                FilterRunner.translate(new TipeFilter(), in, out, options,
+                        UnaryOperator.identity());
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            return best;
+        } finally {
+            in.delete();
+            out.delete();
+        }
+    }
+}
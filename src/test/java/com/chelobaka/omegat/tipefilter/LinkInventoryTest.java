@@ -0,0 +1,176 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.omegat.filters2.ITranslateCallback;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chelobaka.tipe.core.TagSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LinkInventoryTest {
+
+    private static final String FIRST = "<p><a href=\"index.html\">Home</a> and "
+            + "<a href=\"https://example.org\">site</a></p>\n\n"
+            + "<p>Back <a href=\"index.html\">home</a></p>\n";
+
+    private static final String SECOND = "<p><a href=\"index.html\">Start</a></p>\n\n"
+            + "<p>Read <a href=\"about.html\">about</a> us</p>\n";
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp(@TempDir final Path tempDir) {
+        dir = tempDir;
+    }
+
+    @Test
+    public void testInventory() throws Exception {
+        List<File> files = Arrays.asList(write("first.tip", FIRST), write("second.tip", SECOND));
+        Map<String, String> translations = Collections.singletonMap("about.html", "ru/about.html");
+        List<LinkInventory.Link> links = LinkInventory.scan(files, TagSet.DEFAULT, "UTF-8",
+                translations::get);
+
+        List<String> lines = new ArrayList<>();
+        for (LinkInventory.Link link : links) {
+            lines.add(link.getUrl() + " " + link.getOccurrences() + " " + link.getFiles().size()
+                    + " " + link.isTranslated());
+        }
+        assertEquals(Arrays.asList("index.html 3 2 false", "about.html 1 1 true",
+                "https://example.org 1 1 false"), lines);
+    }
+
+    @Test
+    public void testDedupeHrefs() throws Exception {
+        File first = write("first.tip", FIRST);
+        File second = write("second.tip", SECOND);
+        Map<String, String> options = Collections.singletonMap(TipeFilter.OPTION_DEDUPE_HREFS,
+                "true");
+
+        TipeFilter.resetEmittedHrefs();
+        List<String> entries = new ArrayList<>(FilterRunner.parse(new TipeFilter(), first,
+                options));
+        entries.addAll(FilterRunner.parse(new TipeFilter(), second, options));
+        assertEquals(Arrays.asList("<a1>Home</a1> and <a2>site</a2>", "index.html",
+                "https://example.org", "Back <a1>home</a1>", "<a1>Start</a1>",
+                "Read <a2>about</a2> us", "about.html"), entries);
+
+        // New project load emits hrefs again
+        TipeFilter.resetEmittedHrefs();
+        assertEquals(Arrays.asList("<a1>Start</a1>", "index.html", "Read <a2>about</a2> us",
+                "about.html"), FilterRunner.parse(new TipeFilter(), second, options));
+
+        // Every occurrence is an entry without the option
+        assertEquals(5, FilterRunner.parse(new TipeFilter(), first,
+                Collections.emptyMap()).size());
+        TipeFilter.resetEmittedHrefs();
+    }
+
+    @Test
+    public void testDedupeHrefsInTranslatePasses() throws Exception {
+        File first = write("first.tip", FIRST);
+        File second = write("second.tip", SECOND);
+        Map<String, String> options = Collections.singletonMap(TipeFilter.OPTION_DEDUPE_HREFS,
+                "true");
+
+        TipeFilter.resetEmittedHrefs();
+        List<String> parsed = new ArrayList<>(FilterRunner.parse(new TipeFilter(), first,
+                options));
+        parsed.addAll(FilterRunner.parse(new TipeFilter(), second, options));
+
+        // Both passes see the entries of project load, so neighbours keep their context
+        List<List<String>> passes = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+        List<String> targets = new ArrayList<>();
+        for (File file : Arrays.asList(first, second)) {
+            File out = new File(dir.toFile(), file.getName() + ".out");
+            translate(file, out, options, passes);
+            targets.add(new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8));
+        }
+        assertEquals(parsed, passes.get(0));
+        assertEquals(parsed, passes.get(1));
+
+        // Other occurrences get the translation of the entry
+        assertTrue(targets.get(1).contains("<a href=\"ru/index.html\">Start</a>"),
+                targets.get(1));
+        assertTrue(targets.get(0).contains("Back <a href=\"ru/index.html\">home</a>"),
+                targets.get(0));
+        TipeFilter.resetEmittedHrefs();
+    }
+
+    /**
+     * Translate file recording entry sources of each pass.
+     */
+    private static void translate(final File in, final File out,
+                                  final Map<String, String> options,
+                                  final List<List<String>> passes) throws Exception {
+        int[] pass = {1};
+        new TipeFilter().translateFile(in, out, options, FilterRunner.CONTEXT,
+                new ITranslateCallback() {
+                    @Override
+                    public String getTranslation(final String id, final String source,
+                                                 final String path) {
+                        if (!source.isEmpty()) {
+                            passes.get(pass[0] - 1).add(source);
+                        }
+                        if (source.endsWith(".html")) {
+                            return "ru/" + source;
+                        }
+                        return source;
+                    }
+
+                    @Override
+                    public String getTranslation(final String id, final String source) {
+                        return getTranslation(id, source, null);
+                    }
+
+                    @Override
+                    public void linkPrevNextSegments() {
+                    }
+
+                    @Override
+                    public void setPass(final int number) {
+                        pass[0] = number;
+                    }
+                });
+    }
+
+    private File write(final String name, final String content) throws Exception {
+        Path path = dir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path.toFile();
+    }
+}
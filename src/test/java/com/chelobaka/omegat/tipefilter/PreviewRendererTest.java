@@ -0,0 +1,92 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PreviewRendererTest {
+
+    private static final Map<String, String> NO_HREFS = Collections.emptyMap();
+
+    @Test
+    public void testRender() throws Exception {
+        File file = File.createTempFile("preview", ".tip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("<p><em>One two</em></p>\n"
+                + "<p><strong>One two</strong></p>\n").getBytes(StandardCharsets.UTF_8));
+        List<String> sources = FilterRunner.parse(file);
+        assertEquals(2, sources.size());
+        String source = sources.get(0);
+        assertEquals(source, sources.get(1));
+
+        PreviewRenderer renderer = new PreviewRenderer();
+        String translation = source.replace("One", "Three");
+        String first = renderer.render(file, source, 0, translation, NO_HREFS);
+        assertEquals("<em>Three two</em>", first);
+        assertEquals("<strong>Three two</strong>",
+                renderer.render(file, source, 1, translation, NO_HREFS));
+
+        // Unchanged translation is not rendered again
+        assertSame(first, renderer.render(file, source, 0, translation, NO_HREFS));
+        String second = renderer.render(file, source, 0, source, NO_HREFS);
+        assertNotSame(first, second);
+        assertEquals("<em>One two</em>", second);
+
+        assertNull(renderer.render(file, "Missing", 0, "Missing", NO_HREFS));
+
+        // Edited source is read again
+        Files.write(file.toPath(), Arrays.asList("<td><sup>One two</sup></td>"),
+                StandardCharsets.UTF_8);
+        assertEquals("<sup>Three two</sup>",
+                renderer.render(file, source, 0, translation, NO_HREFS));
+    }
+
+    @Test
+    public void testRenderHrefs() throws Exception {
+        File file = File.createTempFile("preview", ".tip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "<p>Read <a href=\"about.html\">about</a> us</p>\n"
+                .getBytes(StandardCharsets.UTF_8));
+        String source = FilterRunner.parse(file).get(0);
+
+        // Hrefs are translated like in the target
+        PreviewRenderer renderer = new PreviewRenderer();
+        assertEquals("Read <a href=\"about.html\">about</a> us",
+                renderer.render(file, source, 0, source, NO_HREFS));
+        assertEquals("Read <a href=\"ru/about.html\">about</a> us",
+                renderer.render(file, source, 0, source,
+                        Collections.singletonMap("about.html", "ru/about.html")));
+    }
+}
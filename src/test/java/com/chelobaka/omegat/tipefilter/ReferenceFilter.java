@@ -0,0 +1,368 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Frozen regular expression based implementation of the filter, kept as
+ * reference for differential tests. Tokenizing and segmentation are the
+ * original ones. Replacements are literal, and meta tags are restored in
+ * one pass, so restored tag bodies are never scanned again for meta tags.
+ *
+ * <p>Do not optimize this class, its only purpose is to stay obviously
+ * correct.
+ */
+final class ReferenceFilter {
+
+    private static final Pattern BLANK_PATTERN = Pattern.compile("^[\\s\\n]+$");
+
+    private static final Pattern ATOMIC_PATTERN =
+            Pattern.compile("^\\s+|\\{\\{IMG.+?}}\\s*|\\n\\s*");
+
+    private static final Pattern META_PATTERN = Pattern.compile("<[^<>]*>");
+
+    private static final Pattern HREF_PATTERN = Pattern.compile("href=\"(.+?)\"");
+
+    private static final String FORMATTING_TAGS = "strong|em|a|strike|sub|sup|span";
+
+    private static final String BLOCK_TAGS =
+            "div|iframe|ul|ol|li|p|blockquote|table|tbody|tr|td|th";
+
+    private static final Pattern OPENING_PATTERN =
+            Pattern.compile("<(" + FORMATTING_TAGS + ")(?:[^>])*>");
+    private static final Pattern CLOSING_PATTERN =
+            Pattern.compile("</(" + FORMATTING_TAGS + ")>");
+    private static final Pattern BLOCK_PATTERN =
+            Pattern.compile("</*(?:" + BLOCK_TAGS + ")(?:[^>])*> *");
+
+    private static final String[][] SPECIAL_HTML_CHARACTERS = {
+        {"&amp;", "&"},
+        {"&nbsp;", "\u00A0"},
+        {"&quot;", "\""}
+    };
+
+    /**
+     * Receiver of segments.
+     */
+    interface Translator {
+        /**
+         * Translate segment.
+         * @param source segment source
+         * @param comment segment comment or null
+         * @return translation
+         */
+        String translate(String source, String comment);
+    }
+
+    private static class Block implements Comparable<Block> {
+        final int start;
+        final int end;
+        final boolean atomic;
+
+        Block(final boolean atomic, final int start, final int end) {
+            this.atomic = atomic;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int compareTo(final Block that) {
+            return Integer.compare(this.start, that.start);
+        }
+    }
+
+    private static final class Tag extends Block {
+        private final String name;
+        private final boolean opening;
+        private String metaBody;
+        private String href;
+        private Tag pair;
+
+        Tag(final String name, final int start, final int end, final boolean opening) {
+            super(false, start, end);
+            this.name = name;
+            this.opening = opening;
+        }
+    }
+
+    private final String doc;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<String, String> metaToHtmlMap = new HashMap<>();
+    private final Map<String, String> htmlToMetaMap = new HashMap<>();
+    private final Map<Character, Integer> metaCounters = new HashMap<>();
+
+    private ReferenceFilter(final String doc) {
+        this.doc = doc;
+        tokenize();
+    }
+
+    /**
+     * Collect segments of a document.
+     * @param doc document
+     * @return segment sources followed by comments
+     */
+    static List<String> segments(final String doc) {
+        List<String> result = new ArrayList<>();
+        new ReferenceFilter(doc).translate((source, comment) -> {
+            result.add(describe(source, comment));
+            return source;
+        }, UnaryOperator.identity());
+        return result;
+    }
+
+    /**
+     * Translate document.
+     * @param doc document
+     * @param translator segment translator
+     * @param hrefTranslator href translator
+     * @return translated document
+     */
+    static String translate(final String doc, final Translator translator,
+                            final UnaryOperator<String> hrefTranslator) {
+        return new ReferenceFilter(doc).translate(translator, hrefTranslator);
+    }
+
+    static String describe(final String source, final String comment) {
+        return source + " | " + comment;
+    }
+
+    private void tokenize() {
+        Matcher matcher = ATOMIC_PATTERN.matcher(doc);
+        while (matcher.find()) {
+            blocks.add(new Block(true, matcher.start(), matcher.end()));
+        }
+        matcher = BLOCK_PATTERN.matcher(doc);
+        while (matcher.find()) {
+            blocks.add(new Block(true, matcher.start(), matcher.end()));
+        }
+
+        List<Tag> allTags = new ArrayList<>();
+        matcher = OPENING_PATTERN.matcher(doc);
+        while (matcher.find()) {
+            allTags.add(new Tag(matcher.group(1), matcher.start(), matcher.end(), true));
+        }
+        matcher = CLOSING_PATTERN.matcher(doc);
+        while (matcher.find()) {
+            allTags.add(new Tag(matcher.group(1), matcher.start(), matcher.end(), false));
+        }
+        Collections.sort(allTags);
+
+        for (int i = 0; i < allTags.size() - 1; ++i) {
+            Tag currentTag = allTags.get(i);
+            if (currentTag.pair != null || !currentTag.opening) {
+                continue;
+            }
+            int tagDepth = 1;
+            for (int j = i + 1; j < allTags.size(); ++j) {
+                Tag candidate = allTags.get(j);
+                if (!candidate.name.equals(currentTag.name)) {
+                    continue;
+                }
+                if (candidate.opening) {
+                    tagDepth++;
+                    continue;
+                }
+                tagDepth--;
+                if (tagDepth == 0) {
+                    currentTag.pair = candidate;
+                    break;
+                }
+            }
+        }
+
+        allTags.forEach(this::generateMetaBody);
+        blocks.addAll(allTags);
+        blocks.add(new Block(true, doc.length(), doc.length()));
+        Collections.sort(blocks);
+
+        List<Block> payloads = new ArrayList<>();
+        int lastBlockEnd = 0;
+        for (Block block : blocks) {
+            if (block.start > lastBlockEnd) {
+                payloads.add(new Block(false, lastBlockEnd, block.start));
+            }
+            lastBlockEnd = block.end;
+        }
+        blocks.addAll(payloads);
+        Collections.sort(blocks);
+
+        int formattingDepth = 0;
+        Iterator<Block> iter = blocks.iterator();
+        while (iter.hasNext()) {
+            Block block = iter.next();
+            if (block instanceof Tag) {
+                if (((Tag) block).opening) {
+                    formattingDepth++;
+                } else {
+                    formattingDepth--;
+                }
+            } else if (block.atomic && formattingDepth > 0 && block.end > block.start
+                    && BLANK_PATTERN.matcher(doc.substring(block.start, block.end)).matches()) {
+                iter.remove();
+            }
+        }
+    }
+
+    private void generateMetaBody(final Tag tag) {
+        if (tag.metaBody != null) {
+            return;
+        }
+        String tagBody = doc.substring(tag.start, tag.end);
+        String metaBody = htmlToMetaMap.get(tagBody);
+        if (metaBody == null || tag.pair == null) {
+            Character metaNameChar = tag.name.charAt(0);
+            int metaCounter = metaCounters.getOrDefault(metaNameChar, 0) + 1;
+            metaCounters.put(metaNameChar, metaCounter);
+            String tagFormat;
+            if (tag.opening) {
+                tagFormat = "<%s%d>";
+            } else {
+                tagFormat = "</%s%d>";
+            }
+            metaBody = String.format(tagFormat, metaNameChar, metaCounter);
+        }
+        tag.metaBody = metaBody;
+        if (tag.name.equals("a")) {
+            Matcher matcher = HREF_PATTERN.matcher(tagBody);
+            if (matcher.find()) {
+                tag.href = matcher.group(1);
+            }
+        }
+        metaToHtmlMap.put(metaBody, tagBody);
+        htmlToMetaMap.put(tagBody, metaBody);
+        if (tag.pair != null) {
+            String pairMetaBody = "</" + metaBody.substring(1);
+            tag.pair.metaBody = pairMetaBody;
+            metaToHtmlMap.put(pairMetaBody, doc.substring(tag.pair.start, tag.pair.end));
+        }
+    }
+
+    private String translate(final Translator translator,
+                             final UnaryOperator<String> hrefTranslator) {
+        StringBuilder output = new StringBuilder();
+        boolean payloadInCache = false;
+        List<Block> cache = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.atomic) {
+                if (!cache.isEmpty()) {
+                    if (payloadInCache) {
+                        output.append(translateBlocks(cache, translator, hrefTranslator));
+                    } else {
+                        output.append(doc, cache.get(0).start, cache.get(cache.size() - 1).end);
+                    }
+                    payloadInCache = false;
+                    cache.clear();
+                }
+                output.append(doc, block.start, block.end);
+            } else {
+                payloadInCache |= !(block instanceof Tag);
+                cache.add(block);
+            }
+        }
+        return output.toString();
+    }
+
+    private String translateBlocks(final List<Block> blocks, final Translator translator,
+                                   final UnaryOperator<String> hrefTranslator) {
+        int groupStart = blocks.get(0).start;
+        int groupEnd = blocks.get(blocks.size() - 1).end;
+
+        while (blocks.size() > 2) {
+            Block left = blocks.get(0);
+            Block right = blocks.get(blocks.size() - 1);
+            if (!(left instanceof Tag) || !(right instanceof Tag)
+                    || ((Tag) left).pair != right || ((Tag) left).name.equals("a")) {
+                break;
+            }
+            blocks.remove(0);
+            blocks.remove(blocks.size() - 1);
+        }
+        int scopeStart = blocks.get(0).start;
+        int scopeEnd = blocks.get(blocks.size() - 1).end;
+
+        Set<String> scopeMetaBodies = new HashSet<>();
+        StringBuilder commentBuilder = new StringBuilder();
+        Map<String, String> anchorTagHrefs = new LinkedHashMap<>();
+        StringBuilder translationBuilder = new StringBuilder();
+        for (Block block : blocks) {
+            if (block instanceof Tag) {
+                Tag tag = (Tag) block;
+                translationBuilder.append(tag.metaBody);
+                scopeMetaBodies.add(tag.metaBody);
+                if (tag.href != null) {
+                    commentBuilder.append(tag.metaBody).append(": ").append(tag.href).append("\n");
+                    anchorTagHrefs.put(tag.metaBody, tag.href);
+                }
+            } else {
+                translationBuilder.append(doc, block.start, block.end);
+            }
+        }
+
+        String translation = translationBuilder.toString();
+        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
+            translation = translation.replace(subst[0], subst[1]);
+        }
+        String comment = null;
+        if (commentBuilder.length() > 0) {
+            comment = commentBuilder.toString();
+        }
+
+        translation = translator.translate(translation, comment);
+
+        for (String[] subst : SPECIAL_HTML_CHARACTERS) {
+            translation = translation.replace(subst[1], subst[0]);
+        }
+        StringBuffer restored = new StringBuffer();
+        Matcher matcher = META_PATTERN.matcher(translation);
+        while (matcher.find()) {
+            String html = matcher.group();
+            if (scopeMetaBodies.contains(html)) {
+                html = metaToHtmlMap.get(html);
+            }
+            matcher.appendReplacement(restored, Matcher.quoteReplacement(html));
+        }
+        translation = matcher.appendTail(restored).toString();
+        Map<String, String> translatedHrefs = new LinkedHashMap<>();
+        for (String href : anchorTagHrefs.values()) {
+            translatedHrefs.putIfAbsent(href, hrefTranslator.apply(href));
+        }
+        for (Map.Entry<String, String> hrefEntry : translatedHrefs.entrySet()) {
+            translation = translation.replace("href=\"" + hrefEntry.getKey() + "\"",
+                    "href=\"" + hrefEntry.getValue() + "\"");
+        }
+
+        return doc.substring(groupStart, scopeStart) + translation
+                + doc.substring(scopeEnd, groupEnd);
+    }
+}
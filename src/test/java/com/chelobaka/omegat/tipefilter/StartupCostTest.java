@@ -0,0 +1,174 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.omegat.filters2.IFilter;
+
+import com.chelobaka.tipe.core.TokenizedDocument;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plugin share of OmegaT startup.
+ *
+ * Plugin and core classes are loaded by a fresh class loader, then the
+ * calls OmegaT makes at startup are replayed: plugin loading, filter
+ * instantiation and filter list queries. Nothing needed only to work on
+ * tipe³ files may be loaded by then; editor helpers, caches and the core
+ * engine are initialized when the first tipe³ file is processed.
+ *
+ * Run {@code gradle internalReport} for startup time and loaded class sizes.
+ */
+public class StartupCostTest {
+
+    private static final String PACKAGE = "com.chelobaka.";
+
+    // Classes which must not be loaded at startup
+    private static final List<String> DEFERRED = Arrays.asList(
+            "com.chelobaka.omegat.tipefilter.HTMLTagMarker",
+            "com.chelobaka.omegat.tipefilter.PreviewPane",
+            "com.chelobaka.omegat.tipefilter.PreviewRenderer",
+            "com.chelobaka.omegat.tipefilter.TagCheckDialog",
+            "com.chelobaka.omegat.tipefilter.TagChecker",
+            "com.chelobaka.omegat.tipefilter.DocumentCache",
+            "com.chelobaka.omegat.tipefilter.DigestStore");
+
+    private static final int BENCHMARK_RUNS = 20;
+
+    /**
+     * Class loader loading plugin and core classes itself and recording them.
+     */
+    private static final class IsolatedLoader extends URLClassLoader {
+        private final Set<String> loaded = Collections.synchronizedSet(new LinkedHashSet<>());
+
+        IsolatedLoader() {
+            super(codeSources(), StartupCostTest.class.getClassLoader());
+        }
+
+        private static URL[] codeSources() {
+            Set<URL> urls = new LinkedHashSet<>();
+            urls.add(TipeFilter.class.getProtectionDomain().getCodeSource().getLocation());
+            urls.add(TokenizedDocument.class.getProtectionDomain().getCodeSource().getLocation());
+            return urls.toArray(new URL[0]);
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.startsWith(PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    c = findClass(name);
+                    loaded.add(name);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+
+        long classBytes() throws IOException {
+            long result = 0;
+            for (String name : new ArrayList<>(loaded)) {
+                try (InputStream in = getResourceAsStream(name.replace('.', '/') + ".class")) {
+                    result += in.available();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Replay plugin related OmegaT startup calls.
+     * @param loader class loader
+     * @throws Exception on failure
+     */
+    private static void startUp(final ClassLoader loader) throws Exception {
+        Class<?> filterClass = Class.forName(TipeFilter.class.getName(), true, loader);
+        filterClass.getMethod("loadPlugins").invoke(null);
+
+        // Filter master lists filters and their default instances
+        IFilter filter = (IFilter) filterClass.getDeclaredConstructor().newInstance();
+        assertFalse(filter.getFileFormatName().isEmpty());
+        filter.getDefaultInstances();
+        filter.hasOptions();
+        filter.isSourceEncodingVariable();
+        filter.isTargetEncodingVariable();
+    }
+
+    @Test
+    public void testDeferredClasses() throws Exception {
+        try (IsolatedLoader loader = new IsolatedLoader()) {
+            startUp(loader);
+            for (String name : DEFERRED) {
+                assertFalse(loader.loaded.contains(name), name + " is loaded at startup");
+            }
+            for (String name : loader.loaded) {
+                assertFalse(name.startsWith("com.chelobaka.tipe.core."),
+                        name + " is loaded at startup");
+            }
+        }
+    }
+
+    @Test
+    @Tag("internal")
+    public void testStartupCost() throws Exception {
+        long[] times = new long[BENCHMARK_RUNS];
+        Set<String> classes = null;
+        long bytes = 0;
+        for (int i = 0; i < BENCHMARK_RUNS; i++) {
+            try (IsolatedLoader loader = new IsolatedLoader()) {
+                long start = System.nanoTime();
+                startUp(loader);
+                times[i] = System.nanoTime() - start;
+                classes = loader.loaded;
+                bytes = loader.classBytes();
+            }
+        }
+        Arrays.sort(times);
+        System.out.printf("Startup: first %.2f ms, median %.2f ms, %d classes, %d bytes%n",
+                times[BENCHMARK_RUNS - 1] / 1e6, times[BENCHMARK_RUNS / 2] / 1e6,
+                classes.size(), bytes);
+        for (String name : classes) {
+            System.out.println("  " + name);
+        }
+        assertTrue(times[0] > 0);
+    }
+}
@@ -0,0 +1,72 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TagCheckerTest {
+
+    private static final int ENTRY_COUNT = 100_000;
+
+    @Test
+    public void testIncrementalCheck() {
+        List<TagChecker.Item> items = new ArrayList<>();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            String source = "<s1>Entry " + i + "</s1> <a1>link</a1>";
+            items.add(new TagChecker.Item(i, "file.tip", source, source, false));
+        }
+        items.set(7, new TagChecker.Item(7, "file.tip", "<e1>Seven</e1>", "Seven</e1>", false));
+        items.set(9, new TagChecker.Item(9, "file.tip", "page.html", "page .html", true));
+        items.set(11, new TagChecker.Item(11, "file.tip", "<e1>Eleven</e1>", null, false));
+
+        TagChecker checker = new TagChecker();
+        assertEquals(Arrays.asList("#7 file.tip: missing <e1>",
+                "#9 file.tip: broken href \"page .html\""), describe(checker.check(items)));
+        assertEquals(ENTRY_COUNT, checker.getLastChecked());
+
+        // Only changed entries are checked again
+        items.set(7, new TagChecker.Item(7, "file.tip", "<e1>Seven</e1>", "<e1>Seven</e1>",
+                false));
+        items.set(11, new TagChecker.Item(11, "file.tip", "<e1>Eleven</e1>", "</e1>Eleven<e1>",
+                false));
+        assertEquals(Arrays.asList("#9 file.tip: broken href \"page .html\"",
+                "#11 file.tip: crossed </e1>"), describe(checker.check(items)));
+        assertEquals(2, checker.getLastChecked());
+
+        assertEquals(0, checker.check(items.subList(0, 10)).size() - 1);
+        assertEquals(0, checker.getLastChecked());
+    }
+
+    private static List<String> describe(final List<TagChecker.Issue> issues) {
+        List<String> result = new ArrayList<>();
+        for (TagChecker.Issue issue : issues) {
+            result.add(TagCheckDialog.describe(issue));
+        }
+        return result;
+    }
+}
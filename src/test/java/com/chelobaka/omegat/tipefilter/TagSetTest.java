@@ -0,0 +1,64 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.chelobaka.tipe.core.TagSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TagSetTest {
+
+    @Test
+    public void testSharedInstances() {
+        Map<String, String> options = new HashMap<>();
+        assertSame(TagSet.DEFAULT, TagSet.forOptions(options));
+
+        options.put(TagSet.OPTION_FORMATTING_TAGS, "strong, em, mark");
+        Map<String, String> sameOptions = new HashMap<>();
+        sameOptions.put(TagSet.OPTION_FORMATTING_TAGS, "strong,em mark");
+        assertSame(TagSet.forOptions(options), TagSet.forOptions(sameOptions));
+    }
+
+    @Test
+    public void testCustomTags() throws Exception {
+        File file = File.createTempFile("tagset", ".tip");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "<section>Some <mark>marked</mark> text</section>"
+                .getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> options = new HashMap<>();
+        options.put(TagSet.OPTION_FORMATTING_TAGS, "mark");
+        options.put(TagSet.OPTION_BLOCK_TAGS, "section");
+        List<String> entries = FilterRunner.parse(new TipeFilter(), file, options);
+        assertEquals(1, entries.size());
+        assertEquals("Some <m1>marked</m1> text", entries.get(0));
+    }
+}
@@ -0,0 +1,125 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetOutputTest {
+
+    @Test
+    public void testUnchangedTargetIsKept() throws Exception {
+        File target = File.createTempFile("target", ".tip");
+        target.deleteOnExit();
+        DigestStore store = DigestStore.memory();
+
+        assertTrue(write(target, "<p>Text</p>", store));
+        assertFalse(write(target, "<p>Text</p>", store));
+        assertTrue(write(target, "<p>Other text</p>", store));
+        assertEquals("<p>Other text</p>", read(target));
+
+        // Target changed by somebody else is written again
+        Files.write(target.toPath(), "<p>Edited</p>".getBytes(StandardCharsets.UTF_8));
+        assertTrue(write(target, "<p>Other text</p>", store));
+        assertEquals("<p>Other text</p>", read(target));
+    }
+
+    @Test
+    public void testDigestsSavedOnce() throws Exception {
+        File dir = Files.createTempDirectory("digests").toFile();
+        File storeFile = new File(dir, DigestStore.FILE_NAME);
+        File target = new File(dir, "target.tip");
+        DigestStore store = DigestStore.forFile(storeFile);
+
+        assertTrue(write(target, "<p>Text</p>", store));
+        assertFalse(storeFile.exists());
+
+        DigestStore.saveAll();
+        Properties records = new Properties();
+        try (InputStream in = Files.newInputStream(storeFile.toPath())) {
+            records.load(in);
+        }
+        assertTrue(records.containsKey(target.getAbsolutePath()));
+        assertEquals(2, dir.list().length);
+
+        Files.delete(target.toPath());
+        Files.delete(storeFile.toPath());
+        Files.delete(dir.toPath());
+    }
+
+    @Test
+    public void testTranslateFile() throws Exception {
+        File in = File.createTempFile("target", ".tip");
+        File out = File.createTempFile("target", ".tip");
+        in.deleteOnExit();
+        out.deleteOnExit();
+        Files.write(in.toPath(), "<p>One</p><p>Two</p>".getBytes(StandardCharsets.UTF_8));
+
+        TipeFilter filter = new TipeFilter();
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), s -> s);
+        assertEquals("<p>One</p><p>Two</p>", read(out));
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), String::toUpperCase);
+        assertEquals("<p>ONE</p><p>TWO</p>", read(out));
+        FilterRunner.translate(filter, in, out, Collections.emptyMap(), String::toUpperCase);
+        assertEquals("<p>ONE</p><p>TWO</p>", read(out));
+    }
+
+    @Test
+    public void testUntranslatedFile() throws Exception {
+        File in = File.createTempFile("target", ".tip");
+        File out = File.createTempFile("target", ".tip");
+        in.deleteOnExit();
+        out.deleteOnExit();
+
+        String source = "<p>\u0422\u0435\u043A\u0441\u0442 &amp; <em>text</em></p>\r\n";
+        Files.write(in.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        FilterRunner.translate(in, out);
+        assertEquals(source, read(out));
+
+        // Untranslated text is still normalized
+        Files.write(in.toPath(), "<p>Fish & chips</p>".getBytes(StandardCharsets.UTF_8));
+        FilterRunner.translate(in, out);
+        assertEquals("<p>Fish &amp; chips</p>", read(out));
+    }
+
+    private static boolean write(final File target, final String text, final DigestStore store)
+            throws Exception {
+        TargetOutput output = new TargetOutput(target);
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+        output.close();
+        return output.commit(store);
+    }
+
+    private static String read(final File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,111 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package com.chelobaka.omegat.tipefilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class WatchDaemonTest {
+
+    private static final String TMX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<tmx version=\"1.4\"><header srclang=\"en-US\"/><body>\n"
+            + "<tu><tuv xml:lang=\"en-US\"><seg>One</seg></tuv>"
+            + "<tuv xml:lang=\"ru\"><seg>Один</seg></tuv></tu>\n"
+            + "<tu><tuv lang=\"EN\"><seg>Two &amp; three</seg></tuv>"
+            + "<tuv lang=\"RU-RU\"><seg>Два <ph>x</ph>и три</seg></tuv></tu>\n"
+            + "<tu><tuv xml:lang=\"en\"><seg>Four</seg></tuv>"
+            + "<tuv xml:lang=\"de\"><seg>Vier</seg></tuv></tu>\n"
+            + "</body></tmx>\n";
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp(@TempDir final Path tempDir) {
+        dir = tempDir;
+    }
+
+    @Test
+    public void testMemory() throws Exception {
+        File tmx = write(dir.resolve("memory.tmx"), TMX).toFile();
+        TmxMemory memory = TmxMemory.load(tmx, "en", "ru");
+        assertEquals(2, memory.size());
+        assertEquals("Один", memory.get("One"));
+        assertEquals("Два xи три", memory.get("Two & three"));
+        assertNull(memory.get("Four"));
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        Path source = dir.resolve("source");
+        Path target = dir.resolve("target");
+        Path first = write(source.resolve("first.tip"), "<p>One</p>\n<p>Four</p>\n");
+        Path second = write(source.resolve("sub/second.tip"), "<p>Two &amp; three</p>\n");
+        Path other = write(source.resolve("notes.txt"), "One\n");
+        File tmx = write(dir.resolve("memory.tmx"), TMX).toFile();
+
+        WatchDaemon daemon = new WatchDaemon(source, target, tmx, "en", "ru");
+        daemon.reloadMemory();
+        daemon.process(Set.of(first, second, other), false);
+        assertEquals("<p>Один</p>\n<p>Four</p>\n", read(target.resolve("first.tip")));
+        assertEquals("<p>Два xи три</p>\n", read(target.resolve("sub/second.tip")));
+        assertFalse(Files.exists(target.resolve("notes.txt")));
+
+        write(first, "<p>Four</p>\n<p>One</p>\n");
+        daemon.process(Set.of(first), true);
+        assertEquals("<p>Four</p>\n<p>Один</p>\n", read(target.resolve("first.tip")));
+
+        Files.delete(second);
+        daemon.process(Set.of(second), true);
+        assertFalse(Files.exists(target.resolve("sub/second.tip")));
+
+        // Removed directory comes as a single event
+        Path third = write(source.resolve("sub/deep/third.tip"), "<p>One</p>\n");
+        daemon.process(Set.of(third), true);
+        assertEquals("<p>Один</p>\n", read(target.resolve("sub/deep/third.tip")));
+        Files.delete(third);
+        Files.delete(third.getParent());
+        Files.delete(source.resolve("sub"));
+        daemon.process(Set.of(source.resolve("sub")), true);
+        assertFalse(Files.exists(target.resolve("sub")));
+        assertEquals("<p>Four</p>\n<p>Один</p>\n", read(target.resolve("first.tip")));
+    }
+
+    private static Path write(final Path path, final String text) throws Exception {
+        Files.createDirectories(path.getParent());
+        return Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,305 @@
+/**************************************************************************
+ Tipe³ file filter for OmegaT
+
+ Copyright (C) 2018 Lev Abashkin
+
+ This file is NOT a part of OmegaT.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **************************************************************************/
+
+package org.omegat.filters;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.omegat.core.data.IProject;
+import org.omegat.core.data.SourceTextEntry;
+import org.omegat.core.statistics.Statistics;
+import org.omegat.filters2.ITranslateCallback;
+
+import com.chelobaka.omegat.tipefilter.TipeFilter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end simulation of a project with many tipe³ files.
+ *
+ * Runs the workflow OmegaT goes through: a new filter instance per file,
+ * project load through the real load callback with prev/next linkage,
+ * a statistics run over all entries and target generation with both
+ * translate passes. Wall time, peak heap and garbage collections are
+ * printed for each stage and for the whole workflow.
+ *
+ * File count and size are set with {@code tipe.simulation.files} and
+ * {@code tipe.simulation.paragraphs}. Run with {@code gradle simulationReport}.
+ */
+@Tag("simulation")
+public class TipeProjectSimulation extends TestFilterBase {
+
+    private static final int FILES = Integer.getInteger("tipe.simulation.files", 50);
+    private static final int PARAGRAPHS = Integer.getInteger("tipe.simulation.paragraphs", 40);
+    private static final long SEED = 47;
+
+    // Part of paragraphs shared between files, they make repetitions in statistics
+    private static final int SHARED_PARAGRAPHS = 20;
+    private static final int SHARED_PERCENT = 30;
+
+    private static final String[] WORDS = {
+        "project", "filter", "segment", "translation", "memory", "source", "target",
+        "file", "format", "tag", "link", "page", "text", "word", "editor", "glossary",
+        "текст", "перевод", "страница", "ссылка",
+    };
+
+    private static final String TRANSLATION_PREFIX = "T: ";
+
+    @Test
+    public void testProjectWorkflow(@TempDir final File sourceDir, @TempDir final File targetDir)
+            throws Exception {
+        setUp();
+        List<File> files = generateProject(sourceDir);
+
+        Stage total = new Stage("whole workflow", null);
+
+        // Project load: every file is parsed by a new filter instance
+        Stage load = new Stage("project load", total);
+        List<IProject.FileInfo> fileInfos = new ArrayList<>();
+        for (File file : files) {
+            TestProject project = new TestProject(new ProjectPropertiesTest());
+            fileInfos.add(project.loadSourceFiles(new TipeFilter(), file.getPath(),
+                    Collections.emptyMap()));
+        }
+        load.report();
+
+        // Statistics: words of all and of unique segments
+        Stage statistics = new Stage("statistics", total);
+        int segments = 0;
+        int words = 0;
+        int uniqueWords = 0;
+        Set<String> unique = new HashSet<>();
+        Map<String, String> translations = new HashMap<>();
+        for (IProject.FileInfo fileInfo : fileInfos) {
+            for (SourceTextEntry entry : fileInfo.entries) {
+                String source = entry.getSrcText();
+                int count = Statistics.numberOfWords(source);
+                segments++;
+                words += count;
+                if (unique.add(source)) {
+                    uniqueWords += count;
+                    translations.put(source, TRANSLATION_PREFIX + source);
+                }
+            }
+        }
+        statistics.report();
+        System.out.printf("%d files, %d segments, %d words, %d unique segments, "
+                + "%d unique words%n", files.size(), segments, words, unique.size(), uniqueWords);
+
+        // Target generation: every file is written by a new filter instance
+        Stage targets = new Stage("target generation", total);
+        for (File file : files) {
+            File target = new File(targetDir, file.getName());
+            new TipeFilter().translateFile(file, target, Collections.emptyMap(), context,
+                    new TranslateCallback(translations));
+        }
+        targets.report();
+        total.report();
+
+        assertTrue(segments > 0);
+        String[] written = targetDir.list();
+        assertTrue(written != null);
+        assertEquals(files.size(), written.length);
+        String sample = new String(Files.readAllBytes(new File(targetDir,
+                files.get(0).getName()).toPath()), StandardCharsets.UTF_8);
+        assertTrue(sample.contains(TRANSLATION_PREFIX), "Target is not translated");
+    }
+
+    /**
+     * Generate project source files. A part of paragraphs is shared between
+     * files like boilerplate of real sites.
+     */
+    private static List<File> generateProject(final File dir) throws Exception {
+        Random random = new Random(SEED);
+        List<String> shared = new ArrayList<>();
+        for (int i = 0; i < SHARED_PARAGRAPHS; i++) {
+            shared.add(paragraph(random));
+        }
+        List<File> result = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            StringBuilder text = new StringBuilder();
+            text.append("<span class=\"title\">Page ").append(i).append("</span>\n\n");
+            for (int j = 0; j < PARAGRAPHS; j++) {
+                if (random.nextInt(100) < SHARED_PERCENT) {
+                    text.append(shared.get(random.nextInt(shared.size())));
+                } else {
+                    text.append(paragraph(random));
+                }
+                text.append("\n\n");
+            }
+            File file = new File(dir, String.format("page%04d.tip", i));
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+            result.add(file);
+        }
+        return result;
+    }
+
+    private static String paragraph(final Random random) {
+        StringBuilder text = new StringBuilder();
+        switch (random.nextInt(4)) {
+            case 0:
+                text.append("<ul> <li>").append(words(random, 5)).append("</li> <li><a href=\"page")
+                        .append(random.nextInt(FILES)).append(".html\">")
+                        .append(words(random, 2)).append("</a> ").append(words(random, 4))
+                        .append("</li> </ul>");
+                break;
+            case 1:
+                text.append("<table><tbody><tr><td>").append(words(random, 3))
+                        .append("</td><td><strong>").append(words(random, 2))
+                        .append("</strong></td></tr></tbody></table>");
+                break;
+            case 2:
+                text.append("{{IMG|").append(random.nextInt(1000))
+                        .append("|image.jpg|supersize|center}}\n\n")
+                        .append("<div align=\"center\">").append(words(random, 6)).append("</div>");
+                break;
+            default:
+                text.append(words(random, 8)).append(" <em>").append(words(random, 3))
+                        .append("</em> ").append(words(random, 8)).append(" <a href=\"https://site")
+                        .append(random.nextInt(10)).append(".org\">").append(words(random, 2))
+                        .append("</a>.");
+        }
+        return text.toString();
+    }
+
+    private static String words(final Random random, final int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Translate callback backed by a source to translation map.
+     */
+    private static final class TranslateCallback implements ITranslateCallback {
+        private final Map<String, String> translations;
+
+        TranslateCallback(final Map<String, String> translations) {
+            this.translations = translations;
+        }
+
+        @Override
+        public String getTranslation(final String id, final String source, final String path) {
+            return getTranslation(id, source);
+        }
+
+        @Override
+        public String getTranslation(final String id, final String source) {
+            String translation = translations.get(source);
+            if (translation == null) {
+                return source;
+            }
+            return translation;
+        }
+
+        @Override
+        public void linkPrevNextSegments() {
+        }
+
+        @Override
+        public void setPass(final int pass) {
+        }
+    }
+
+    /**
+     * Wall time, peak heap and garbage collections of a workflow stage.
+     * Peak heap is the sum of heap pool peaks, which may be reached at
+     * different moments, so it is an upper bound. Stages reset heap peaks,
+     * so the peak of a parent stage is the highest peak of its stages.
+     */
+    private static final class Stage {
+        private final String name;
+        private final Stage parent;
+        private long stagePeak;
+        private final long start;
+        private final long collections;
+        private final long collectionTime;
+
+        Stage(final String name, final Stage parent) {
+            this.name = name;
+            this.parent = parent;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            collections = collectionCount();
+            collectionTime = collectionTime();
+            start = System.nanoTime();
+        }
+
+        void report() {
+            long wallTime = (System.nanoTime() - start) / 1_000_000;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            peak = Math.max(peak, stagePeak);
+            if (parent != null) {
+                parent.stagePeak = Math.max(parent.stagePeak, peak);
+            }
+            System.out.printf("%s: %d ms, peak heap %d MB, %d GCs taking %d ms%n", name,
+                    wallTime, peak >> 20, collectionCount() - collections,
+                    collectionTime() - collectionTime);
+        }
+
+        private static long collectionCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, bean.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long collectionTime() {
+            long time = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                time += Math.max(0, bean.getCollectionTime());
+            }
+            return time;
+        }
+    }
+}